@@ -8,6 +8,7 @@ import com.home.you.bookstore.rest.client.BookStoreConnection;
 import com.home.you.bookstore.rest.client.ClientException;
 import com.home.you.bookstore.results.PurchaseResult;
 import com.home.you.bookstore.results.Status;
+import com.home.you.bookstore.utils.Money;
 
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -25,6 +26,8 @@ public class BookStoreCli implements BookStoreErrorReporter {
     public static final String ADMIN_SERVICE = "admin";
     private static final String LOCAL_ADDRESS = "localhost";
     private static final int DEFAULT_PORT = 8080;
+    // Every command runs in its own process, so the basket is kept per user
+    private static final String USER_NAME_PROPERTY = "user.name";
     private static final String SEARCH_FOR_ALL = null;
     private static final String START_OF_LINE_MARGIN = "--  ";
     private static final String NO_DATA = "--";
@@ -43,7 +46,11 @@ public class BookStoreCli implements BookStoreErrorReporter {
     }
 
     private void start(String[] args) throws IOException {
-        final BookStoreConnection connection = BookStoreConnection.create(LOCAL_ADDRESS, DEFAULT_PORT);
+        final BookStoreConnection connection = BookStoreConnection.builder()
+                .withAddress(LOCAL_ADDRESS)
+                .withPort(DEFAULT_PORT)
+                .withSessionToken(System.getProperty(USER_NAME_PROPERTY))
+                .build();
         final BookStoreClient client = BookStoreClient.create(this, connection);
         final String method = args[0];
         final String service = args[1];
@@ -273,7 +280,7 @@ public class BookStoreCli implements BookStoreErrorReporter {
             builder.append(fill(book.getId(), ID_SPACE_SIZE));
             builder.append(fill(book.getTitle(), TITLE_SPACE_SIZE));
             builder.append(fill(book.getAuthor(), AUTHOR_SPACE_SIZE));
-            builder.append(fill(book.getPrice().toString(), PRICE_SPACE_SIZE));
+            builder.append(fill(Money.toString(book.getPriceCents()), PRICE_SPACE_SIZE));
             builder.append(fill(book.getQuantity(), QUANTITY_SPACE_SIZE));
             builder.append(END_OF_LINE_MARGIN);
             builder.append(NEW_LINE);
@@ -289,11 +296,11 @@ public class BookStoreCli implements BookStoreErrorReporter {
         builder.append(fill(NO_DATA, ID_SPACE_SIZE));
         builder.append(fill(NO_DATA, TITLE_SPACE_SIZE));
         builder.append(fill(NO_DATA, AUTHOR_SPACE_SIZE));
-        BigDecimal totalPrice = BigDecimal.valueOf(0);
+        long totalCents = 0;
         for (Book book : books) {
-            totalPrice = totalPrice.add(book.getPrice());
+            totalCents = Math.addExact(totalCents, book.getPriceCents());
         }
-        builder.append(fill(totalPrice.toString(), PRICE_SPACE_SIZE));
+        builder.append(fill(Money.toString(totalCents), PRICE_SPACE_SIZE));
         builder.append(fill(books.size(), QUANTITY_SPACE_SIZE));
         builder.append(END_OF_LINE_MARGIN);
         builder.append(NEW_LINE);
@@ -321,7 +328,7 @@ public class BookStoreCli implements BookStoreErrorReporter {
             builder.append(fill(book.getId(), ID_SPACE_SIZE));
             builder.append(fill(book.getTitle(), TITLE_SPACE_SIZE));
             builder.append(fill(book.getAuthor(), AUTHOR_SPACE_SIZE));
-            builder.append(fill(book.getPrice().toString(), PRICE_SPACE_SIZE));
+            builder.append(fill(Money.toString(book.getPriceCents()), PRICE_SPACE_SIZE));
             builder.append(fill(statusIt.next().name(), QUANTITY_SPACE_SIZE));
             builder.append(END_OF_LINE_MARGIN);
             builder.append(NEW_LINE);
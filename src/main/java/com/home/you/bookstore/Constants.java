@@ -9,6 +9,7 @@ public class Constants {
 	// Positions
 	public static final int FIRST = 0;
 	public static final int SECOND = 1;
+	public static final int THIRD = 2;
 
 	// Symbols
 	public static final String NEW_LINE = "\n";
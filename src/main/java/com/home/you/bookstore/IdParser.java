@@ -1,34 +1,53 @@
 package com.home.you.bookstore;
 
-import java.io.BufferedReader;
+import com.home.you.bookstore.utils.ByteLineReader;
+import com.home.you.bookstore.utils.IntList;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
 import static com.home.you.bookstore.Constants.SEMICOLON;
 import static com.home.you.bookstore.Constants.UTF8;
+import static com.home.you.bookstore.utils.ParseUtils.parseInt;
+import static com.home.you.bookstore.utils.VarInts.readUnsigned;
+import static com.home.you.bookstore.utils.VarInts.writeUnsigned;
 import static java.util.Collections.unmodifiableList;
 
 public class IdParser {
 	
+	private static final byte SEPARATOR = ';';
+	private static final int MAX_PRESIZED_IDS = 1024;
+
 	private IdParser() {}
 	
     public static List<Integer> decode(InputStream stream) throws IOException {
-        final List<Integer> books = new ArrayList<>();
+        final int[] ids = decodeIds(stream);
+        final List<Integer> list = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            list.add(id);
+        }
+        return unmodifiableList(list);
+    }
+
+    /**
+     * Reads the ids straight from the bytes, empty values are skipped.
+     */
+    public static int[] decodeIds(InputStream stream) throws IOException {
+        final IntList ids = new IntList();
         try {
-            final BufferedReader input = new BufferedReader(new InputStreamReader(stream));
-            String line = input.readLine();
-            while (line != null) {
-                parseLineAndPopulate(line, books);
-                line = input.readLine();
+            final ByteLineReader input = new ByteLineReader(stream);
+            while (input.next()) {
+                parseLineAndPopulate(input.line(), input.length(), ids);
             }
-            input.close();
+            stream.close();
         } catch (IOException e) {
             throw new IllegalStateException("Unable to read data from stream.", e);
         }
-        return unmodifiableList(books);
+        return ids.toArray();
     }
 
     public static byte[] encode(List<Integer> result) throws IOException {
@@ -42,11 +61,46 @@ public class IdParser {
         return blob;
     }
 
-    private static void parseLineAndPopulate(String line, List<Integer> list) {
-        final String[] values = line.split(Constants.SEMICOLON);
-        for (String value : values) {
-            final int id = Integer.parseInt(value);
-            list.add(id);
+    /**
+     * Binary form: the number of ids followed by the ids as variable length ints.
+     */
+    public static byte[] encodeBinary(List<Integer> ids) throws IOException {
+        final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        writeUnsigned(blob, ids.size());
+        for (Integer id : ids) {
+            writeUnsigned(blob, id);
+        }
+        return blob.toByteArray();
+    }
+
+    public static int[] decodeIdsBinary(InputStream stream) throws IOException {
+        try (final InputStream input = new BufferedInputStream(stream)) {
+            final int count = readUnsigned(input);
+            if (count < 0) {
+                throw new IllegalArgumentException("Invalid id count " + count);
+            }
+            // The count comes from the sender, the list only grows as far as the ids actually sent
+            final IntList ids = new IntList(Math.min(count, MAX_PRESIZED_IDS));
+            for (int i = 0; i < count; i++) {
+                ids.add(readUnsigned(input));
+            }
+            return ids.toArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read data from stream.", e);
+        }
+    }
+
+    private static void parseLineAndPopulate(byte[] line, int length, IntList ids) {
+        int from = 0;
+        while (from <= length) {
+            int to = from;
+            while (to < length && line[to] != SEPARATOR) {
+                to++;
+            }
+            if (to > from) {
+                ids.add(parseInt(line, from, to));
+            }
+            from = to + 1;
         }
     }
 }
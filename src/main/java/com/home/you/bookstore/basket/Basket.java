@@ -4,13 +4,23 @@ import com.home.you.bookstore.book.Book;
 
 import java.util.List;
 
+/**
+ * Books are identified by their id, adding the same id twice puts two copies in the basket.
+ */
 public interface Basket {
 	void add(List<Book> books);
 
 	void remove(List<Book> books);
+
+	/**
+	 * Removes one copy per given id, ids not in the basket are ignored.
+	 */
+	void remove(int... ids);
 	
 	List<Book> getBooks();
 
+	int size();
+
 	void clear();
 
 	static Basket create() {
@@ -1,38 +1,117 @@
 package com.home.you.bookstore.basket;
 
 import com.home.you.bookstore.book.Book;
+import com.home.you.bookstore.utils.IntHashMap;
+import com.home.you.bookstore.utils.IntList;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * Multiset of books keyed by book id. The list of books is only built when asked for.
+ */
 class BasketImpl implements Basket {
-	private List<Book> basket = new ArrayList<>();
+	private IntHashMap<Entry> entries = new IntHashMap<>();
+	// Ids in the order they were first added, may contain ids whose count dropped to zero
+	private IntList order = new IntList();
+	private int emptyEntries;
+	private int size;
+	private List<Book> books = Collections.emptyList();
 
 	BasketImpl() {}
 	
 	@Override
-	public void add(List<Book> books) {
-		basket.addAll(books);
-	}
-
-	@Override
-	public void remove(List<Book> books) {
+	public synchronized void add(List<Book> books) {
 		books.forEach(book -> {
-			final int index = basket.indexOf(book);
-			if(index >= 0) {
-				basket.remove(index);
+			Entry entry = entries.get(book.getId());
+			if (entry == null) {
+				entry = new Entry(book);
+				entries.put(book.getId(), entry);
+				order.add(book.getId());
+			} else if (entry.count == 0) {
+				emptyEntries--;
 			}
+			entry.count++;
+			size++;
 		});
+		this.books = null;
+	}
+
+	@Override
+	public synchronized void remove(List<Book> books) {
+		books.forEach(book -> removeOne(book.getId()));
+	}
+
+	@Override
+	public synchronized void remove(int... ids) {
+		for (int id : ids) {
+			removeOne(id);
+		}
 	}
 	
 	@Override
-	public List<Book> getBooks() {
-		return Collections.unmodifiableList(basket);
+	public synchronized List<Book> getBooks() {
+		if (books == null) {
+			books = Collections.unmodifiableList(materialize());
+		}
+		return books;
+	}
+
+	@Override
+	public synchronized int size() {
+		return size;
 	}
 	
 	@Override
-	public void clear() {
-		basket.clear();
+	public synchronized void clear() {
+		entries = new IntHashMap<>();
+		order = new IntList();
+		emptyEntries = 0;
+		size = 0;
+		books = Collections.emptyList();
+	}
+
+	private void removeOne(int id) {
+		final Entry entry = entries.get(id);
+		if (entry != null && entry.count > 0) {
+			entry.count--;
+			size--;
+			if (entry.count == 0) {
+				emptyEntries++;
+			}
+			books = null;
+		}
+	}
+
+	private List<Book> materialize() {
+		final List<Book> result = new ArrayList<>(size);
+		final boolean compact = emptyEntries > 0;
+		final IntHashMap<Entry> compactedEntries = compact ? new IntHashMap<>(entries.size() - emptyEntries) : entries;
+		final IntList compactedOrder = compact ? new IntList(order.size() - emptyEntries) : order;
+		for (int i = 0; i < order.size(); i++) {
+			final int id = order.get(i);
+			final Entry entry = entries.get(id);
+			for (int j = 0; j < entry.count; j++) {
+				result.add(entry.book);
+			}
+			if (compact && entry.count > 0) {
+				compactedEntries.put(id, entry);
+				compactedOrder.add(id);
+			}
+		}
+		entries = compactedEntries;
+		order = compactedOrder;
+		emptyEntries = 0;
+		return result;
+	}
+
+	private static final class Entry {
+		private final Book book;
+		private int count;
+
+		private Entry(Book book) {
+			this.book = book;
+		}
 	}
 }
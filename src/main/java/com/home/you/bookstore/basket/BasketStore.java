@@ -0,0 +1,33 @@
+package com.home.you.bookstore.basket;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Baskets of the clients, one per session token.
+ */
+public interface BasketStore {
+	/**
+	 * @param sessionToken token of the client session, requests without token share one basket
+	 */
+	Basket get(String sessionToken);
+
+	/**
+	 * Removes baskets that have not been used for the given time.
+	 *
+	 * @return number of removed baskets
+	 */
+	int evictIdle(long idleTime, TimeUnit unit);
+
+	int size();
+
+	static BasketStore create() {
+		return new ShardedBasketStore();
+	}
+
+	/**
+	 * Store where all sessions share the given basket.
+	 */
+	static BasketStore shared(Basket basket) {
+		return new SharedBasketStore(basket);
+	}
+}
@@ -0,0 +1,125 @@
+package com.home.you.bookstore.basket;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Baskets spread over independently locked shards. Every shard keeps its baskets in least recently
+ * used order, so evicting idle baskets only visits the ones that are removed. A shard holds a
+ * bounded number of baskets and drops its least recently used one for a new one, so clients making
+ * up session tokens can not fill the heap before the idle baskets are evicted.
+ */
+class ShardedBasketStore implements BasketStore {
+	private static final int DEFAULT_SHARDS = 64;
+	private static final int DEFAULT_MAX_SHARD_SIZE = 4096;
+	private static final int INITIAL_SHARD_CAPACITY = 1024;
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private final Shard[] shards;
+	private final LongSupplier clock;
+	private final Basket anonymousBasket = Basket.create();
+
+	ShardedBasketStore() {
+		this(DEFAULT_SHARDS, DEFAULT_MAX_SHARD_SIZE, System::nanoTime);
+	}
+
+	/**
+	 * Used by unit test
+	 */
+	ShardedBasketStore(int shards, int maxShardSize, LongSupplier nanoClock) {
+		if (Integer.bitCount(shards) != 1) {
+			throw new IllegalArgumentException("Number of shards must be a power of two, got " + shards);
+		}
+		if (maxShardSize <= 0) {
+			throw new IllegalArgumentException("Shard size must be positive, got " + maxShardSize);
+		}
+		this.shards = new Shard[shards];
+		for (int i = 0; i < shards; i++) {
+			this.shards[i] = new Shard(maxShardSize);
+		}
+		this.clock = nanoClock;
+	}
+
+	@Override
+	public Basket get(String sessionToken) {
+		if (sessionToken == null) {
+			return anonymousBasket;
+		}
+		return shardOf(sessionToken).get(sessionToken, clock.getAsLong());
+	}
+
+	@Override
+	public int evictIdle(long idleTime, TimeUnit unit) {
+		final long oldestAllowed = clock.getAsLong() - unit.toNanos(idleTime);
+		int evicted = 0;
+		for (Shard shard : shards) {
+			evicted += shard.evictOlderThan(oldestAllowed);
+		}
+		return evicted;
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (Shard shard : shards) {
+			size += shard.size();
+		}
+		return size;
+	}
+
+	private Shard shardOf(String sessionToken) {
+		final int h = sessionToken.hashCode();
+		return shards[(h ^ (h >>> 16)) & (shards.length - 1)];
+	}
+
+	private static final class Shard {
+		private final LinkedHashMap<String, Session> sessions;
+
+		private Shard(int maxSize) {
+			sessions = new LinkedHashMap<String, Session>(Math.min(INITIAL_SHARD_CAPACITY, maxSize), LOAD_FACTOR, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+					return size() > maxSize;
+				}
+			};
+		}
+
+		private synchronized Basket get(String sessionToken, long now) {
+			Session session = sessions.get(sessionToken);
+			if (session == null) {
+				session = new Session(Basket.create());
+				sessions.put(sessionToken, session);
+			}
+			session.lastAccess = now;
+			return session.basket;
+		}
+
+		private synchronized int evictOlderThan(long oldestAllowed) {
+			int evicted = 0;
+			final Iterator<Map.Entry<String, Session>> it = sessions.entrySet().iterator();
+			while (it.hasNext() && it.next().getValue().lastAccess - oldestAllowed < 0) {
+				it.remove();
+				evicted++;
+			}
+			return evicted;
+		}
+
+		private synchronized int size() {
+			return sessions.size();
+		}
+	}
+
+	private static final class Session {
+		private final Basket basket;
+		private long lastAccess;
+
+		private Session(Basket basket) {
+			this.basket = basket;
+		}
+	}
+}
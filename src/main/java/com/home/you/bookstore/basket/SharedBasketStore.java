@@ -0,0 +1,26 @@
+package com.home.you.bookstore.basket;
+
+import java.util.concurrent.TimeUnit;
+
+class SharedBasketStore implements BasketStore {
+	private final Basket basket;
+
+	SharedBasketStore(Basket basket) {
+		this.basket = basket;
+	}
+
+	@Override
+	public Basket get(String sessionToken) {
+		return basket;
+	}
+
+	@Override
+	public int evictIdle(long idleTime, TimeUnit unit) {
+		return 0;
+	}
+
+	@Override
+	public int size() {
+		return 1;
+	}
+}
@@ -1,31 +1,34 @@
 package com.home.you.bookstore.book;
 
+import com.home.you.bookstore.utils.Money;
+
 import java.math.BigDecimal;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class Book {
     private static final int NO_ID = -1;
 
     private final int id;
-    private final String title;
-    private final String author;
-    private final BigDecimal price;
-    private final AtomicInteger quantity;
+    private final Text title;
+    private final Text author;
+    private final long priceCents;
+    private final StockCounter quantity;
 
     public Book(int id, String title, String author, BigDecimal price, int quantity) {
-        this.id = id;
-        this.title = title;
-        this.author = author;
-        this.price = price;
-        this.quantity = new AtomicInteger(quantity);
+        this(id, title, author, Money.toCents(price), quantity);
     }
     public Book(String title, String author, BigDecimal price, int quantity) {
-        this.id = NO_ID;
+        this(NO_ID, title, author, Money.toCents(price), quantity);
+    }
+    public Book(int id, String title, String author, long priceCents, int quantity) {
+        this(id, Text.of(title), Text.of(author), priceCents, quantity);
+    }
+    public Book(int id, Text title, Text author, long priceCents, int quantity) {
+        this.id = id;
         this.title = title;
         this.author = author;
-        this.price = price;
-        this.quantity = new AtomicInteger(quantity);
+        this.priceCents = priceCents;
+        this.quantity = new StockCounter(quantity);
     }
 
     public boolean hasId() {
@@ -37,41 +40,71 @@ public class Book {
     }
 
     public String getTitle() {
-        return title;
+        return title.value();
     }
 
     public String getAuthor() {
+        return author.value();
+    }
+
+    public Text getTitleText() {
+        return title;
+    }
+
+    public Text getAuthorText() {
         return author;
     }
 
     public BigDecimal getPrice() {
-        return price;
+        return Money.toBigDecimal(priceCents);
+    }
+
+    public long getPriceCents() {
+        return priceCents;
     }
 
     public boolean inStock() {
         return quantity.get() > 0;
     }
 
-    public void decreaseQuantity() { quantity.decrementAndGet(); }
+    public void decreaseQuantity() { quantity.add(-1); }
+
+    /**
+     * Takes one book from stock unless it is out of stock.
+     *
+     * @return true if one book was taken
+     */
+    public boolean tryDecreaseQuantity() {
+        return quantity.tryDecrement();
+    }
 
     public int getQuantity() {
         return quantity.get();
     }
 
     public void addQuantity(int value) {
-        quantity.addAndGet(value);
+        quantity.add(value);
     }
 
     public boolean matchTitleOrAuthor(String searchString) {
-        return title.toLowerCase().contains(searchString.toLowerCase()) || author.toLowerCase().contains(searchString.toLowerCase());
+        return matchLowerCase(searchString.toLowerCase());
+    }
+
+    /**
+     * Same as {@link #matchTitleOrAuthor(String)} for a search string that is already in lower case.
+     */
+    public boolean matchLowerCase(String lowerCaseSearchString) {
+        return title.lowerCase().contains(lowerCaseSearchString) || author.lowerCase().contains(lowerCaseSearchString);
     }
 
     public boolean isSame(Book book) {
-        return Book.isSame(this, book.title, book.author, book.price);
+        return title.value().equalsIgnoreCase(book.title.value()) && author.value().equalsIgnoreCase(book.author.value())
+                && priceCents == book.priceCents;
     }
 
     public static boolean isSame(Book book, String title, String author, BigDecimal price) {
-        return title.equalsIgnoreCase(book.title) && author.equalsIgnoreCase(book.author) && price.equals(book.price);
+        return title.equalsIgnoreCase(book.title.value()) && author.equalsIgnoreCase(book.author.value())
+                && price.compareTo(book.getPrice()) == 0;
     }
 
     @Override
@@ -82,19 +115,19 @@ public class Book {
         final boolean result = Objects.equals(id, other.id) &&
                 Objects.equals(title, other.title) &&
                 Objects.equals(author, other.author) &&
-                Objects.equals(price, other.price) &&
+                priceCents == other.priceCents &&
                 Objects.equals(quantity.get(), other.quantity.get());
         return result;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, title, author, price, quantity.get());
+        return Objects.hash(id, title, author, priceCents, quantity.get());
     }
 
     @Override
     public String toString() {
-        return "Book [id=" + id + ", title=" + title + ", author=" + author + ", price=" + price + ", quantity="
+        return "Book [id=" + id + ", title=" + title + ", author=" + author + ", price=" + Money.toString(priceCents) + ", quantity="
                 + quantity + "]";
     }
 }
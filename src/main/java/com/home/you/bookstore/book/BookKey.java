@@ -0,0 +1,61 @@
+package com.home.you.bookstore.book;
+
+import com.home.you.bookstore.utils.Money;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * Identity of a book in the store, title and author are compared ignoring case (same rules as
+ * {@link String#equalsIgnoreCase(String)}) and price must be equal.
+ */
+public final class BookKey {
+    private final String title;
+    private final String author;
+    private final long priceCents;
+    private final int hash;
+
+    private BookKey(String foldedTitle, String foldedAuthor, long priceCents) {
+        this.title = foldedTitle;
+        this.author = foldedAuthor;
+        this.priceCents = priceCents;
+        this.hash = Objects.hash(this.title, this.author, priceCents);
+    }
+
+    public static BookKey of(Book book) {
+        return new BookKey(book.getTitleText().folded(), book.getAuthorText().folded(), book.getPriceCents());
+    }
+
+    public static BookKey of(String title, String author, BigDecimal price) {
+        return new BookKey(fold(title), fold(author), Money.toCents(price));
+    }
+
+    public static BookKey of(String title, String author, long priceCents) {
+        return new BookKey(fold(title), fold(author), priceCents);
+    }
+
+    private static String fold(String value) {
+        return Text.of(value).folded();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final BookKey other = (BookKey) o;
+        return hash == other.hash &&
+                title.equals(other.title) &&
+                author.equals(other.author) &&
+                priceCents == other.priceCents;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "BookKey [title=" + title + ", author=" + author + ", price=" + Money.toString(priceCents) + "]";
+    }
+}
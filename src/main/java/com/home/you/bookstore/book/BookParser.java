@@ -1,35 +1,64 @@
 package com.home.you.bookstore.book;
 
-import java.io.BufferedReader;
+import com.home.you.bookstore.utils.ByteLineReader;
+import com.home.you.bookstore.utils.IdGenerator;
+import com.home.you.bookstore.utils.Money;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.math.BigDecimal;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 
 import static com.home.you.bookstore.Constants.*;
 import static com.home.you.bookstore.utils.IdGenerator.generateId;
-import static com.home.you.bookstore.utils.ParseUtils.parseBigDecimal;
+import static com.home.you.bookstore.utils.IdGenerator.generateIds;
+import static com.home.you.bookstore.utils.ParseUtils.parseCents;
+import static com.home.you.bookstore.utils.ParseUtils.parseInt;
+import static com.home.you.bookstore.utils.VarInts.*;
 import static java.util.Collections.unmodifiableList;
 
 public class BookParser {
-    private static final int TITLE_INDEX = 0;
-    private static final int AUTHOR_INDEX = 1;
-    private static final int PRICE_INDEX = 2;
-    private static final int QUANTITY_INDEX = 3;
-    private static final int ID_INDEX = 4;
+    private static final byte SEPARATOR = ';';
+    private static final byte NEW_LINE_BYTE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final int ID_FIELD = 4;
     private static final int NO_ID = -1;
+    private static final int NEW_AUTHOR = 0;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
     
     private BookParser(){}
 
+    /**
+     * Reads UTF-8 lines as bytes, fields are located and numbers parsed without splitting into
+     * strings. Authors are looked up by their bytes in {@link TextPool#authors()}, so books by the
+     * same author share one {@link Text}. Empty lines are skipped.
+     */
     public static List<Book> decode(InputStream stream) throws IOException {
         final List<Book> books = new ArrayList<>();
-        try (final BufferedReader input = new BufferedReader(new InputStreamReader(stream));) {
-            String line = input.readLine();
-            while (line != null) {
-                parseLineAndPopulate(line, books);
-                line = input.readLine();
+        try (final InputStream input = stream) {
+            final ByteLineReader reader = new ByteLineReader(input);
+            while (reader.next()) {
+                if (reader.length() > 0) {
+                    books.add(parseLine(reader.line(), 0, reader.length(), IdGenerator::generateId));
+                }
             }
         } catch (IOException e) {
             throw new IllegalStateException("Unable to read data from stream.", e);
@@ -37,37 +66,348 @@ public class BookParser {
         return unmodifiableList(books);
     }
 
+    /**
+     * Streams the books to the consumer as each line is read, so the input is never held in memory.
+     * Lines that are not valid books are skipped.
+     *
+     * @return number of skipped lines
+     */
+    public static int decode(InputStream stream, Consumer<Book> consumer) throws IOException {
+        return decode(stream, IdGenerator::generateId, consumer);
+    }
+
+    /**
+     * Same as {@link #decode(InputStream, Consumer)}, lines without an id get theirs from the given
+     * supplier.
+     */
+    public static int decode(InputStream stream, IntSupplier ids, Consumer<Book> consumer) throws IOException {
+        int rejected = 0;
+        try (final InputStream input = stream) {
+            final ByteLineReader reader = new ByteLineReader(input);
+            while (reader.next()) {
+                if (reader.length() > 0) {
+                    final Book book;
+                    try {
+                        book = parseLine(reader.line(), 0, reader.length(), ids);
+                    } catch (IllegalArgumentException e) {
+                        rejected++;
+                        continue;
+                    }
+                    consumer.accept(book);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read data from stream.", e);
+        }
+        return rejected;
+    }
+
+    public static List<Book> decodeParallel(InputStream stream) throws IOException {
+        return decodeParallel(stream, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Gives the same books as {@link #decode(InputStream)}, the whole input is read first and parsed in
+     * newline aligned chunks on the pool. Generated ids are reserved as one block and assigned in
+     * line order.
+     */
+    public static List<Book> decodeParallel(InputStream stream, ForkJoinPool pool) throws IOException {
+        final byte[] bytes;
+        try (final InputStream input = stream) {
+            bytes = readAll(input);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read data from stream.", e);
+        }
+        final Chunk[] chunks = split(bytes, pool.getParallelism());
+        pool.invoke(new ChunkTask(chunks, 0, chunks.length, chunk -> chunk.count(bytes)));
+        int books = 0;
+        int generatedIds = 0;
+        for (Chunk chunk : chunks) {
+            chunk.firstBook = books;
+            chunk.firstGeneratedId = generatedIds;
+            books += chunk.books;
+            generatedIds += chunk.generatedIds;
+        }
+        final int firstId = generateIds(generatedIds);
+        for (Chunk chunk : chunks) {
+            chunk.firstGeneratedId += firstId;
+        }
+        final Book[] result = new Book[books];
+        pool.invoke(new ChunkTask(chunks, 0, chunks.length, chunk -> chunk.parse(bytes, result)));
+        return unmodifiableList(Arrays.asList(result));
+    }
+
+    /**
+     * Binary form of a list of books: the number of books followed by the books. A book is its id
+     * (-1 when it has none), title, author, price in cents and quantity. Each
+     * author is written once per message and referred to by its index after that.
+     */
+    public static void encodeBinary(Iterable<Book> books, OutputStream stream) throws IOException {
+        final OutputStream output = new BufferedOutputStream(stream, BUFFER_SIZE);
+        writeUnsigned(output, count(books));
+        final Map<String, Integer> authors = new HashMap<>();
+        for (Book book : books) {
+            writeSigned(output, book.getId());
+            writeString(output, book.getTitle());
+            final Integer author = authors.get(book.getAuthor());
+            if (author != null) {
+                writeUnsigned(output, author + 1);
+            } else {
+                writeUnsigned(output, NEW_AUTHOR);
+                writeString(output, book.getAuthor());
+                authors.put(book.getAuthor(), authors.size());
+            }
+            writeSigned(output, book.getPriceCents());
+            writeSigned(output, book.getQuantity());
+        }
+        output.flush();
+    }
+
+    public static byte[] encodeBinary(Iterable<Book> books) throws IOException {
+        final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        encodeBinary(books, blob);
+        return blob.toByteArray();
+    }
+
+    public static List<Book> decodeBinary(InputStream stream) throws IOException {
+        final List<Book> books = new ArrayList<>();
+        decodeBinary(stream, books::add);
+        return unmodifiableList(books);
+    }
+
+    /**
+     * Streams the books of the binary form to the consumer as they are read.
+     */
+    public static void decodeBinary(InputStream stream, Consumer<Book> consumer) throws IOException {
+        try (final InputStream input = new BufferedInputStream(stream, BUFFER_SIZE)) {
+            final int count = readUnsigned(input);
+            final List<Text> authors = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final int id = (int) readSigned(input);
+                final String title = readString(input);
+                final int authorIndex = readUnsigned(input);
+                final Text author;
+                if (authorIndex == NEW_AUTHOR) {
+                    author = TextPool.authors().intern(readString(input));
+                    authors.add(author);
+                } else if (authorIndex <= authors.size()) {
+                    author = authors.get(authorIndex - 1);
+                } else {
+                    throw new IllegalArgumentException("Unknown author " + authorIndex);
+                }
+                final long priceCents = readSigned(input);
+                final int quantity = (int) readSigned(input);
+                consumer.accept(new Book(id != NO_ID ? id : generateId(), Text.of(title), author, priceCents, quantity));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read data from stream.", e);
+        }
+    }
+
+    private static int count(Iterable<Book> books) {
+        if (books instanceof Collection) {
+            return ((Collection<Book>) books).size();
+        }
+        int count = 0;
+        for (Iterator<Book> iterator = books.iterator(); iterator.hasNext(); iterator.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static Chunk[] split(byte[] bytes, int parallelism) {
+        final int chunkSize = Math.max(MIN_CHUNK_SIZE, bytes.length / (parallelism * CHUNKS_PER_THREAD) + 1);
+        final List<Chunk> chunks = new ArrayList<>();
+        int from = 0;
+        do {
+            final int to = from + chunkSize < bytes.length ? nextLine(bytes, from + chunkSize, bytes.length) : bytes.length;
+            chunks.add(new Chunk(from, to));
+            from = to;
+        } while (from < bytes.length);
+        return chunks.toArray(new Chunk[0]);
+    }
+
     public static byte[] encode(Iterable<Book> result) throws IOException {
-        final StringBuilder messageBuilder = new StringBuilder();
+        final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        encode(result, blob);
+        return blob.toByteArray();
+    }
+
+    /**
+     * Writes the books to the stream through a fixed size buffer, the stream is flushed but not closed.
+     */
+    public static void encode(Iterable<Book> result, OutputStream stream) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(stream, UTF8), BUFFER_SIZE);
         for (Book book : result) {
-            messageBuilder.append(book.getTitle());
-            messageBuilder.append(SEMICOLON);
-            messageBuilder.append(book.getAuthor());
-            messageBuilder.append(SEMICOLON);
-            messageBuilder.append(book.getPrice());
-            messageBuilder.append(SEMICOLON);
-            messageBuilder.append(book.getQuantity());
+            writer.write(book.getTitle());
+            writer.write(SEMICOLON);
+            writer.write(book.getAuthor());
+            writer.write(SEMICOLON);
+            writer.write(Money.toString(book.getPriceCents()));
+            writer.write(SEMICOLON);
+            writer.write(Integer.toString(book.getQuantity()));
             if (book.hasId()) {
-                messageBuilder.append(SEMICOLON);
-                messageBuilder.append(book.getId());
+                writer.write(SEMICOLON);
+                writer.write(Integer.toString(book.getId()));
+            }
+            writer.write(NEW_LINE);
+        }
+        writer.flush();
+    }
+
+    private static Book parseLine(byte[] bytes, int from, int to, IntSupplier ids) {
+        final int titleEnd = fieldEnd(bytes, from, to);
+        final int authorEnd = fieldEnd(bytes, titleEnd + 1, to);
+        final int priceEnd = fieldEnd(bytes, authorEnd + 1, to);
+        final int quantityEnd = fieldEnd(bytes, priceEnd + 1, to);
+        if (priceEnd >= to) {
+            throw new IllegalArgumentException("Malformed book: " + new String(bytes, from, to - from, UTF8));
+        }
+        final Text title = Text.of(new String(bytes, from, titleEnd - from, UTF8));
+        final Text author = TextPool.authors().intern(bytes, titleEnd + 1, authorEnd);
+        final long priceCents = parseCents(bytes, authorEnd + 1, priceEnd);
+        final int quantity = parseInt(bytes, priceEnd + 1, quantityEnd);
+        final int idEnd = fieldEnd(bytes, quantityEnd + 1, to);
+        // An explicit NO_ID gets an id like a missing one, as in the binary form
+        final int parsedId = idEnd > quantityEnd + 1 ? parseInt(bytes, quantityEnd + 1, idEnd) : NO_ID;
+        final int id = parsedId != NO_ID ? parsedId : ids.getAsInt();
+        return new Book(id, title, author, priceCents, quantity);
+    }
+
+    /**
+     * Same test as {@link #parseLine} uses to decide whether a line needs a generated id.
+     */
+    private static boolean needsGeneratedId(byte[] bytes, int from, int to) {
+        int index = from;
+        for (int separators = 0; separators < ID_FIELD; separators++) {
+            index = fieldEnd(bytes, index, to) + 1;
+        }
+        if (index >= to || bytes[index] == SEPARATOR) {
+            return true;
+        }
+        try {
+            return parseInt(bytes, index, fieldEnd(bytes, index, to)) == NO_ID;
+        } catch (NumberFormatException e) {
+            // Rejected when the line is parsed
+            return false;
+        }
+    }
+
+    /**
+     * @return index of the separator ending the field starting at from, or to for the last field
+     */
+    private static int fieldEnd(byte[] bytes, int from, int to) {
+        int index = Math.min(from, to);
+        while (index < to && bytes[index] != SEPARATOR) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @return end of the line starting at from, excluding the line terminator
+     */
+    private static int lineEnd(byte[] bytes, int from, int to) {
+        int end = from;
+        while (end < to && bytes[end] != NEW_LINE_BYTE) {
+            end++;
+        }
+        return end > from && bytes[end - 1] == CARRIAGE_RETURN ? end - 1 : end;
+    }
+
+    /**
+     * @return start of the line following the one that contains position
+     */
+    private static int nextLine(byte[] bytes, int position, int to) {
+        int index = position;
+        while (index < to && bytes[index] != NEW_LINE_BYTE) {
+            index++;
+        }
+        return Math.min(index + 1, to);
+    }
+
+    private static byte[] readAll(InputStream stream) throws IOException {
+        final ByteArrayOutputStream blob = new ByteArrayOutputStream(BUFFER_SIZE);
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            blob.write(buffer, 0, read);
+        }
+        return blob.toByteArray();
+    }
+
+    /**
+     * Newline aligned part of the input. The first pass counts lines and missing ids, the second pass
+     * parses the lines into their final positions with ids from a block reserved for the chunk.
+     */
+    private static final class Chunk {
+        private final int from;
+        private final int to;
+        private int books;
+        private int generatedIds;
+        private int firstBook;
+        private int firstGeneratedId;
+
+        private Chunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        private void count(byte[] bytes) {
+            int line = from;
+            while (line < to) {
+                final int end = lineEnd(bytes, line, to);
+                if (end > line) {
+                    books++;
+                    if (needsGeneratedId(bytes, line, end)) {
+                        generatedIds++;
+                    }
+                }
+                line = nextLine(bytes, end, to);
+            }
+        }
+
+        private void parse(byte[] bytes, Book[] result) {
+            final int[] nextId = {firstGeneratedId};
+            final IntSupplier ids = () -> nextId[0]++;
+            int position = firstBook;
+            int line = from;
+            while (line < to) {
+                final int end = lineEnd(bytes, line, to);
+                if (end > line) {
+                    result[position++] = parseLine(bytes, line, end, ids);
+                }
+                line = nextLine(bytes, end, to);
+            }
+        }
+    }
+
+    /**
+     * Runs an action for each chunk in a range, splitting the range in halves.
+     */
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+        private final Consumer<Chunk> action;
+
+        private ChunkTask(Chunk[] chunks, int from, int to, Consumer<Chunk> action) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                action.accept(chunks[from]);
+            } else {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(chunks, from, middle, action), new ChunkTask(chunks, middle, to, action));
             }
-            messageBuilder.append(NEW_LINE);
-        }
-        final String message = messageBuilder.toString();
-        final byte[] blob = message.getBytes(UTF8);
-        return blob;
-    }
-
-    private static void parseLineAndPopulate(String line, List<Book> books) {
-        final String[] fields = line.split(SEMICOLON);
-        final String title = fields[TITLE_INDEX];
-        final String author = fields[AUTHOR_INDEX];
-        final BigDecimal price = parseBigDecimal(fields[PRICE_INDEX]);
-        final int quantity = Integer.parseInt(fields[QUANTITY_INDEX]);
-        final int id = fields.length > ID_INDEX ? Integer.parseInt(fields[ID_INDEX]) : NO_ID;
-        final Book book = id != NO_ID ?
-                new Book(id, title, author, price, quantity) :
-                new Book(generateId(), title, author, price, quantity);
-        books.add(book);
+        }
     }
 }
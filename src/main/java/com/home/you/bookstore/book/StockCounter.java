@@ -0,0 +1,260 @@
+package com.home.you.bookstore.book;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Stock of a book that can never be taken below zero. It starts as a single counter and is spread
+ * over padded per-core cells once threads keep failing to update it at the same time, and is put
+ * back to a single counter when the contention is gone.
+ * <p>
+ * A counter or cells being replaced are drained with getAndSet to {@link #RETIRED}, a thread that
+ * finds a retired value reads the current state again.
+ */
+class StockCounter {
+    private static final int RETIRED = Integer.MIN_VALUE;
+    private static final int PROMOTE_FAILURES = 64;
+    // Failures are halved every this many updates, so only failures close together promote
+    private static final int PROMOTE_WINDOW = 1024;
+    private static final int MAX_STRIPES = 64;
+    private static final AtomicIntegerFieldUpdater<StockCounter> BASE =
+            AtomicIntegerFieldUpdater.newUpdater(StockCounter.class, "base");
+
+    private volatile int base;
+    private volatile Cells cells;
+    // Updated without synchronization, only used as a hint
+    private int failures;
+    private int updates;
+
+    StockCounter(int initialValue) {
+        this.base = initialValue;
+    }
+
+    int get() {
+        while (true) {
+            final Cells current = cells;
+            final int value = current == null ? base : current.sum();
+            if (value != RETIRED) {
+                return value;
+            }
+            Thread.yield();
+        }
+    }
+
+    void add(int delta) {
+        int attempts = 0;
+        while (true) {
+            final Cells current = cells;
+            if (current == null) {
+                final int value = base;
+                if (value != RETIRED && BASE.compareAndSet(this, value, value + delta)) {
+                    updated(attempts);
+                    return;
+                }
+                if (value != RETIRED) {
+                    attempts++;
+                    continue;
+                }
+            } else if (current.add(delta)) {
+                return;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return true if one was taken, false if the stock is empty
+     */
+    boolean tryDecrement() {
+        while (true) {
+            final Cells current = cells;
+            final int result;
+            if (current == null) {
+                result = tryDecrementBase();
+            } else {
+                result = current.tryDecrement();
+                if (current.shouldDemote()) {
+                    demote(current);
+                }
+            }
+            if (result != RETIRED) {
+                return result > 0;
+            }
+            Thread.yield();
+        }
+    }
+
+    boolean isStriped() {
+        return cells != null;
+    }
+
+    synchronized void promote() {
+        if (cells == null) {
+            final Cells next = new Cells(stripes());
+            next.spread(BASE.getAndSet(this, RETIRED));
+            cells = next;
+        }
+    }
+
+    synchronized void demote(Cells current) {
+        if (cells == current) {
+            base = current.retire();
+            cells = null;
+            failures = 0;
+            updates = 0;
+        }
+    }
+
+    /**
+     * @return 1 if one was taken, 0 if empty, {@link #RETIRED} if the counter has been replaced
+     */
+    private int tryDecrementBase() {
+        int value = base;
+        int attempts = 0;
+        while (value > 0) {
+            if (BASE.compareAndSet(this, value, value - 1)) {
+                updated(attempts);
+                return 1;
+            }
+            attempts++;
+            value = base;
+        }
+        return value == RETIRED ? RETIRED : 0;
+    }
+
+    /**
+     * Counts an update of the base that failed the given number of times before it succeeded.
+     */
+    void updated(int attempts) {
+        if (++updates >= PROMOTE_WINDOW) {
+            updates = 0;
+            failures >>= 1;
+        }
+        if (attempts > 0) {
+            failures += attempts;
+            if (failures >= PROMOTE_FAILURES) {
+                promote();
+            }
+        }
+    }
+
+    private static int stripes() {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    @Override
+    public String toString() {
+        return Integer.toString(get());
+    }
+
+    /**
+     * Stock spread over cells on separate cache lines. A thread starts at its own cell and moves on
+     * to the others when it is empty, so stock is only reported empty when every cell is.
+     */
+    static final class Cells {
+        private static final int PADDING = 16;
+        private static final int SAMPLE_RATE = 16;
+        private static final int DEMOTE_WINDOW = 256;
+        private static final int DEMOTE_FAILURE_RATE = 16;
+
+        private final AtomicIntegerArray values;
+        private final int stripes;
+        // Sampled contention, updated without synchronization
+        private int samples;
+        private int failures;
+
+        private Cells(int stripes) {
+            this.stripes = stripes;
+            this.values = new AtomicIntegerArray(stripes * PADDING);
+        }
+
+        private void spread(int amount) {
+            for (int i = 0; i < stripes; i++) {
+                values.set(i * PADDING, amount / stripes + (i < amount % stripes ? 1 : 0));
+            }
+        }
+
+        private int tryDecrement() {
+            final int home = home();
+            int attempts = 0;
+            for (int n = 0; n < stripes; n++) {
+                final int index = ((home + n) & (stripes - 1)) * PADDING;
+                int value = values.get(index);
+                while (value > 0) {
+                    if (values.compareAndSet(index, value, value - 1)) {
+                        sample(attempts);
+                        return 1;
+                    }
+                    attempts++;
+                    value = values.get(index);
+                }
+                if (value == RETIRED) {
+                    return RETIRED;
+                }
+            }
+            sample(attempts);
+            return 0;
+        }
+
+        private boolean add(int delta) {
+            final int index = home() * PADDING;
+            int value = values.get(index);
+            while (value != RETIRED) {
+                if (values.compareAndSet(index, value, value + delta)) {
+                    return true;
+                }
+                value = values.get(index);
+            }
+            return false;
+        }
+
+        private int sum() {
+            int sum = 0;
+            for (int i = 0; i < stripes; i++) {
+                final int value = values.get(i * PADDING);
+                if (value == RETIRED) {
+                    return RETIRED;
+                }
+                sum += value;
+            }
+            return sum;
+        }
+
+        private int retire() {
+            int sum = 0;
+            for (int i = 0; i < stripes; i++) {
+                sum += values.getAndSet(i * PADDING, RETIRED);
+            }
+            return sum;
+        }
+
+        private void sample(int attempts) {
+            if (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0) {
+                samples++;
+                failures += attempts;
+            }
+        }
+
+        /**
+         * @return true once a window of samples has seen hardly any failed updates
+         */
+        private boolean shouldDemote() {
+            if (samples < DEMOTE_WINDOW) {
+                return false;
+            }
+            final boolean quiet = failures * DEMOTE_FAILURE_RATE < samples;
+            samples = 0;
+            failures = 0;
+            return quiet;
+        }
+
+        private int home() {
+            return (int) Thread.currentThread().getId() & (stripes - 1);
+        }
+    }
+}
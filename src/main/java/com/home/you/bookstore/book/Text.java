@@ -0,0 +1,91 @@
+package com.home.you.bookstore.book;
+
+/**
+ * Immutable string together with its normalized forms, so searching and comparing books does not
+ * normalize the same title or author over and over. The forms are computed on first use and share
+ * the string they are equal to, an ASCII text in lower case holds a single string.
+ */
+public final class Text {
+    private final String value;
+    // Racy but safe, every thread computes the same immutable string
+    private String lowerCase;
+    private String folded;
+
+    private Text(String value) {
+        this.value = value;
+    }
+
+    public static Text of(String value) {
+        return new Text(value);
+    }
+
+    public String value() {
+        return value;
+    }
+
+    /**
+     * @return value in lower case, as {@link String#toLowerCase()}
+     */
+    public String lowerCase() {
+        String result = lowerCase;
+        if (result == null) {
+            // Returns the value itself when it is already in lower case
+            result = value.toLowerCase();
+            lowerCase = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return value with every character case folded the way {@link String#equalsIgnoreCase(String)}
+     *         compares them
+     */
+    public String folded() {
+        String result = folded;
+        if (result == null) {
+            result = fold(value, lowerCase());
+            folded = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the lower case form if folding gives the same, which it does for ASCII
+     */
+    private static String fold(String value, String lowerCase) {
+        final int length = value.length();
+        if (lowerCase.length() == length) {
+            int i = 0;
+            while (i < length && fold(value.charAt(i)) == lowerCase.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return lowerCase;
+            }
+        }
+        final char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Text && value.equals(((Text) o).value));
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
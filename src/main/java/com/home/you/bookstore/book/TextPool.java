@@ -0,0 +1,137 @@
+package com.home.you.bookstore.book;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.home.you.bookstore.Constants.UTF8;
+
+/**
+ * Dictionary of shared {@link Text} values. Values can be looked up by their UTF-8 bytes, so a
+ * repeated value is neither decoded nor normalized again. The pool only holds its values weakly, a
+ * value leaves the pool once no book refers to it any more, for instance after the catalog was
+ * replaced or a request was answered. The pool stops growing at its limit, values after that are
+ * returned unshared.
+ */
+public class TextPool {
+    private static final int DEFAULT_LIMIT = 1 << 20;
+    private static final TextPool AUTHORS = new TextPool(DEFAULT_LIMIT);
+
+    private final Map<Bytes, Entry> values = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Text> collected = new ReferenceQueue<>();
+    private final int limit;
+
+    TextPool(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Pool shared by everything that reads authors.
+     */
+    public static TextPool authors() {
+        return AUTHORS;
+    }
+
+    public Text intern(String value) {
+        final byte[] bytes = value.getBytes(UTF8);
+        return intern(bytes, 0, bytes.length);
+    }
+
+    public Text intern(byte[] bytes, int from, int to) {
+        removeCollected();
+        final Entry existing = values.get(new Bytes(bytes, from, to));
+        final Text existingText = existing != null ? existing.get() : null;
+        if (existingText != null) {
+            return existingText;
+        }
+        final Text text = Text.of(new String(bytes, from, to - from, UTF8));
+        if (values.size() >= limit) {
+            return text;
+        }
+        final Bytes key = new Bytes(Arrays.copyOfRange(bytes, from, to), 0, to - from);
+        final Entry entry = new Entry(text, key, collected);
+        while (true) {
+            final Entry raced = values.putIfAbsent(key, entry);
+            if (raced == null) {
+                return text;
+            }
+            final Text racedText = raced.get();
+            if (racedText != null) {
+                return racedText;
+            }
+            // Collected but not removed yet
+            if (values.replace(key, raced, entry)) {
+                return text;
+            }
+        }
+    }
+
+    /**
+     * @return number of values in the pool, including values collected since the last lookup
+     */
+    public int size() {
+        return values.size();
+    }
+
+    private void removeCollected() {
+        Reference<? extends Text> reference;
+        while ((reference = collected.poll()) != null) {
+            final Entry entry = (Entry) reference;
+            values.remove(entry.key, entry);
+        }
+    }
+
+    private static final class Entry extends WeakReference<Text> {
+        private final Bytes key;
+
+        private Entry(Text text, Bytes key, ReferenceQueue<Text> queue) {
+            super(text, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Range of a byte array, lookups use the caller's array and only stored keys own a copy.
+     */
+    private static final class Bytes {
+        private final byte[] array;
+        private final int from;
+        private final int to;
+        private final int hash;
+
+        private Bytes(byte[] array, int from, int to) {
+            this.array = array;
+            this.from = from;
+            this.to = to;
+            int h = 1;
+            for (int i = from; i < to; i++) {
+                h = 31 * h + array[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Bytes)) return false;
+            final Bytes other = (Bytes) o;
+            if (hash != other.hash || to - from != other.to - other.from) {
+                return false;
+            }
+            for (int i = 0; i < to - from; i++) {
+                if (array[from + i] != other.array[other.from + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
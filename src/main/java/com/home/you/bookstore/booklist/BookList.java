@@ -1,5 +1,7 @@
 package com.home.you.bookstore.booklist;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Predicate;
 
@@ -10,11 +12,73 @@ public interface BookList {
 
 	boolean add(Book book, int quantity);
 
+	/**
+	 * Adds every book with its own quantity as one update of the list.
+	 *
+	 * @return number of books that were new to the list, the others were merged into existing ones
+	 */
+	int addAll(Collection<Book> books);
+
 	int[] buy(Book... books);
 
+	/**
+	 * Buys either all books or none of them. When a book can not be bought the books already taken
+	 * from stock are put back and reported as {@link com.home.you.bookstore.results.Status#CANCELLED}.
+	 */
+	int[] buyAll(Book... books);
+
+	/**
+	 * Buys every order like {@link #buyAll(Book...)}, in the given order, as one update of the list.
+	 *
+	 * @return the status codes of each order
+	 */
+	int[][] buyOrders(List<Book[]> orders);
+
 	Optional<Book> find(Predicate<Book> predicate);
 
+	Book[] findByIds(int... ids);
+
+	/**
+	 * Increases every time a book is added or bought, two equal versions mean the list has not
+	 * changed in between.
+	 */
+	long version();
+
+	/**
+	 * Increases when books are added to or removed from the list but not when only their stock
+	 * changes, two equal catalog versions mean searches find the same books.
+	 */
+	long catalogVersion();
+
+	/**
+	 * Builds a catalog of the given books and its indexes next to the current one, the list does
+	 * not change until the replacement is published.
+	 */
+	Replacement prepareReplacement(Collection<Book> books);
+
+	/**
+	 * Catalog built by {@link #prepareReplacement(Collection)}.
+	 */
+	interface Replacement {
+		/**
+		 * Swaps the new catalog in at once, calls already running finish against the old one. Books
+		 * that are in both keep their stock, the quantity they were given is ignored.
+		 *
+		 * @return number of books that kept their stock
+		 * @throws IllegalStateException if the catalog was replaced since this one was prepared
+		 */
+		int publish();
+	}
+
 	static BookList create() {
 		return new BookListImpl();
 	}
+
+	/**
+	 * Book list that keeps the catalog outside the heap, for catalogs too large to keep as
+	 * {@link Book} objects. Returned books are copies, stock only changes through the list.
+	 */
+	static BookList createOffHeap() {
+		return new OffHeapBookList();
+	}
 }
@@ -4,17 +4,40 @@ import static com.home.you.bookstore.Constants.*;
 import static com.home.you.bookstore.results.Status.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.home.you.bookstore.book.Book;
+import com.home.you.bookstore.book.BookKey;
 import com.home.you.bookstore.results.Status;
+import com.home.you.bookstore.utils.IntHashMap;
+import com.home.you.bookstore.utils.IntList;
 
+/**
+ * Thread safe book list. Writers are serialized, readers work on an immutable snapshot of the list
+ * and never block.
+ * <p>
+ * The books and their indexes form a {@link Catalog}. A replacement catalog is built next to the
+ * current one and published by swapping the reference, calls that already read the old catalog
+ * finish against it.
+ */
 class BookListImpl implements BookList {
-	private final List<Book> books;
+	private final Object writeLock = new Object();
+	private final Supplier<TrigramIndex> trigramIndexes;
+	private volatile Catalog catalog;
+	private final AtomicLong version = new AtomicLong();
+	// Only written under writeLock
+	private volatile long catalogVersion;
 
 	BookListImpl() {
 		this(new ArrayList<>());
@@ -24,61 +47,387 @@ class BookListImpl implements BookList {
 	 * Used by unit test
 	 */
 	BookListImpl(List<Book> books) {
-		this.books = books;
+		this(books, TrigramIndex::new);
 	}
 
+	BookListImpl(List<Book> books, Supplier<TrigramIndex> trigramIndexes) {
+		this.trigramIndexes = trigramIndexes;
+		this.catalog = new Catalog(books, trigramIndexes.get());
+	}
+
+	/**
+	 * The returned array is shared by all readers of the same version of the list and must not be
+	 * modified.
+	 */
 	@Override
 	public Book[] list(String searchString) {
-		final List<Book> filteredList;
+		final Catalog currentCatalog = catalog;
+		final Snapshot current = currentCatalog.snapshot;
+		final Book[] result;
 		if (isBrowsing(searchString)) {
-			filteredList = this.books;
+			result = current.toArray();
 		} else {
-			filteredList = books.stream().filter(book -> book.matchTitleOrAuthor(searchString))
-					.collect(Collectors.toList());
+			final String lowerCaseSearchString = searchString.toLowerCase();
+			final IntList candidates = currentCatalog.trigramIndex.candidates(lowerCaseSearchString);
+			final List<Book> filteredList;
+			if (candidates != null) {
+				filteredList = new ArrayList<>(candidates.size());
+				for (int i = 0; i < candidates.size(); i++) {
+					final int position = candidates.get(i);
+					if (position >= current.size) {
+						break;
+					}
+					final Book book = current.books[position];
+					if (book.matchLowerCase(lowerCaseSearchString)) {
+						filteredList.add(book);
+					}
+				}
+			} else {
+				filteredList = current.stream().filter(book -> book.matchLowerCase(lowerCaseSearchString))
+						.collect(Collectors.toList());
+			}
+			result = filteredList.toArray(new Book[0]);
 		}
-
-		return filteredList.toArray(new Book[0]);
+		return result;
 	}
 
 	@Override
 	public boolean add(Book book, int quantity) {
 		boolean result = true;
-		final Optional<Book> bOpt = books.stream().filter(b -> b.isSame(book)).findFirst();
-		if (bOpt.isPresent()) {
-			bOpt.get().addQuantity(quantity);
-		} else {
-			result = books.add(book);
+		final BookKey key = BookKey.of(book);
+		synchronized (writeLock) {
+			final Catalog current = catalog;
+			final Book existing = current.keyIndex.get(key);
+			if (existing != null) {
+				existing.addQuantity(quantity);
+			} else {
+				// Searchable before it is published and published before it can be looked up, so a
+				// search finds every book a lookup does
+				current.trigramIndex.add(current.books.size(), book);
+				result = current.books.add(book);
+				current.snapshot = current.snapshot.append(book);
+				current.keyIndex.put(key, book);
+				current.idIndex.putIfAbsent(book.getId(), book);
+				catalogVersion++;
+			}
 		}
+		version.incrementAndGet();
 		return result;
 	}
 
+	@Override
+	public int addAll(Collection<Book> books) {
+		int inserted = 0;
+		synchronized (writeLock) {
+			final Catalog current = catalog;
+			final List<Book> appended = new ArrayList<>();
+			for (Book book : books) {
+				final BookKey key = BookKey.of(book);
+				final Book existing = current.keyIndex.get(key);
+				if (existing != null) {
+					existing.addQuantity(book.getQuantity());
+				} else {
+					current.trigramIndex.add(current.books.size(), book);
+					current.books.add(book);
+					current.keyIndex.put(key, book);
+					appended.add(book);
+				}
+			}
+			current.snapshot = current.snapshot.appendAll(appended);
+			for (Book book : appended) {
+				current.idIndex.putIfAbsent(book.getId(), book);
+			}
+			inserted = appended.size();
+			if (inserted > 0) {
+				catalogVersion++;
+			}
+		}
+		version.incrementAndGet();
+		return inserted;
+	}
+
 	@Override
 	public int[] buy(Book... books) {
+		final int[] statusCode = buyOrder(books);
+		version.incrementAndGet();
+		return statusCode;
+	}
+
+	@Override
+	public int[][] buyOrders(List<Book[]> orders) {
+		final int[][] statusCodes = new int[orders.size()][];
+		for (int i = 0; i < statusCodes.length; i++) {
+			statusCodes[i] = buyAllOrder(orders.get(i));
+		}
+		version.incrementAndGet();
+		return statusCodes;
+	}
+
+	private int[] buyOrder(Book[] books) {
+		final Map<BookKey, Book> keyIndex = catalog.keyIndex;
 		final int[] statusCode = new int[books.length];
 		for (int i = 0; i < books.length; i++) {
-			final Book book = books[i];
-			final Optional<Book> stockBook = this.books.stream().filter(b -> Book.isSame(book, b.getTitle(), b.getAuthor(), b.getPrice()))//TODO:book
-					.findFirst();
-			final AtomicReference<Status> status = new AtomicReference<>(DOES_NOT_EXIST);
-			stockBook.ifPresent(b -> {
-				if (b.inStock()) {
-					status.set(OK);
-					b.decreaseQuantity();
+			final Book stockBook = keyIndex.get(BookKey.of(books[i]));
+			statusCode[i] = reserve(stockBook).value();
+		}
+		return statusCode;
+	}
+
+	@Override
+	public int[] buyAll(Book... books) {
+		final int[] statusCode = buyAllOrder(books);
+		version.incrementAndGet();
+		return statusCode;
+	}
+
+	private int[] buyAllOrder(Book[] books) {
+		final Map<BookKey, Book> keyIndex = catalog.keyIndex;
+		final int[] statusCode = new int[books.length];
+		final Book[] reserved = new Book[books.length];
+		boolean complete = true;
+		for (int i = 0; i < books.length; i++) {
+			final Book stockBook = keyIndex.get(BookKey.of(books[i]));
+			final Status status;
+			if (complete) {
+				status = reserve(stockBook);
+				if (status == OK) {
+					reserved[i] = stockBook;
 				} else {
-					status.set(NOT_IN_STOCK);
+					complete = false;
+				}
+			} else {
+				status = stockBook == null ? DOES_NOT_EXIST : stockBook.inStock() ? CANCELLED : NOT_IN_STOCK;
+			}
+			statusCode[i] = status.value();
+		}
+		if (!complete) {
+			for (int i = 0; i < reserved.length; i++) {
+				if (reserved[i] != null) {
+					reserved[i].addQuantity(1);
+					statusCode[i] = CANCELLED.value();
 				}
-			});
-			statusCode[i] = status.get().value();
+			}
 		}
 		return statusCode;
 	}
 
 	@Override
 	public Optional<Book> find(Predicate<Book> predicate) {
-		return books.stream().filter(predicate).findFirst();
+		return catalog.snapshot.stream().filter(predicate).findFirst();
+	}
+
+	@Override
+	public Book[] findByIds(int... ids) {
+		final IntHashMap<Book> idIndex = catalog.idIndex;
+		final Book[] found = new Book[ids.length];
+		int count = 0;
+		for (int id : ids) {
+			final Book book = idIndex.get(id);
+			if (book != null) {
+				found[count++] = book;
+			}
+		}
+		return count == found.length ? found : Arrays.copyOf(found, count);
+	}
+
+	@Override
+	public long version() {
+		return version.get();
+	}
+
+	@Override
+	public long catalogVersion() {
+		return catalogVersion;
+	}
+
+	@Override
+	public Replacement prepareReplacement(Collection<Book> books) {
+		final Catalog current = catalog;
+		final int currentSize = current.snapshot.size;
+		final List<Book> replacement = new ArrayList<>(books.size());
+		final Map<BookKey, Book> byKey = new HashMap<>(books.size() * 2);
+		int takenOver = 0;
+		for (Book book : books) {
+			final BookKey key = BookKey.of(book);
+			final Book existing = current.keyIndex.get(key);
+			final Book listed = byKey.get(key);
+			if (listed != null) {
+				if (listed != existing) {
+					listed.addQuantity(book.getQuantity());
+				}
+			} else if (existing != null) {
+				byKey.put(key, existing);
+				replacement.add(existing);
+				takenOver++;
+			} else {
+				byKey.put(key, book);
+				replacement.add(book);
+			}
+		}
+		return new PreparedCatalog(current, currentSize, new Catalog(replacement, trigramIndexes.get()), takenOver);
+	}
+
+	private static Status reserve(Book stockBook) {
+		final Status status;
+		if (stockBook == null) {
+			status = DOES_NOT_EXIST;
+		} else if (stockBook.tryDecreaseQuantity()) {
+			status = OK;
+		} else {
+			status = NOT_IN_STOCK;
+		}
+		return status;
 	}
 
 	private static boolean isBrowsing(String searchString) {
 		return searchString == null || EMPTY_STRING.equals(searchString);
 	}
+
+	/**
+	 * Books and their indexes. Only the snapshot is replaced when books are appended, the indexes
+	 * are updated in place by the single writer.
+	 */
+	private static final class Catalog {
+		private final List<Book> books;
+		private final IntHashMap<Book> idIndex;
+		private final Map<BookKey, Book> keyIndex;
+		private final TrigramIndex trigramIndex;
+		private volatile Snapshot snapshot;
+		private boolean staleIds;
+
+		private Catalog(List<Book> books, TrigramIndex trigramIndex) {
+			this.books = books;
+			this.trigramIndex = trigramIndex;
+			this.idIndex = new IntHashMap<>(books.size());
+			this.keyIndex = new ConcurrentHashMap<>(books.size() * 2);
+			for (int i = 0; i < books.size(); i++) {
+				final Book book = books.get(i);
+				idIndex.putIfAbsent(book.getId(), book);
+				keyIndex.putIfAbsent(BookKey.of(book), book);
+				trigramIndex.add(i, book);
+			}
+			this.snapshot = new Snapshot(books.toArray(new Book[0]), books.size());
+		}
+
+		/**
+		 * Puts the given book in place of the book with the same key, only for a catalog that is not
+		 * published yet.
+		 *
+		 * @return true if the catalog has a book with the same key
+		 */
+		private boolean takeOver(Book book) {
+			final BookKey key = BookKey.of(book);
+			final Book listed = keyIndex.get(key);
+			if (listed == null || listed == book) {
+				return listed != null;
+			}
+			for (int position = 0; position < books.size(); position++) {
+				if (books.get(position) == listed) {
+					books.set(position, book);
+					snapshot.books[position] = book;
+					break;
+				}
+			}
+			keyIndex.put(key, book);
+			if (book.getId() == listed.getId()) {
+				idIndex.put(book.getId(), book);
+			} else {
+				// The map can not remove, the ids are indexed again once everything is taken over
+				staleIds = true;
+			}
+			return true;
+		}
+
+		private void reindexIds() {
+			if (staleIds) {
+				idIndex.clear();
+				for (Book book : books) {
+					idIndex.putIfAbsent(book.getId(), book);
+				}
+				staleIds = false;
+			}
+		}
+	}
+
+	private final class PreparedCatalog implements Replacement {
+		private final Catalog previous;
+		private final int previousSize;
+		private final Catalog replacement;
+		private int takenOver;
+
+		private PreparedCatalog(Catalog previous, int previousSize, Catalog replacement, int takenOver) {
+			this.previous = previous;
+			this.previousSize = previousSize;
+			this.replacement = replacement;
+			this.takenOver = takenOver;
+		}
+
+		@Override
+		public int publish() {
+			synchronized (writeLock) {
+				if (catalog != previous) {
+					throw new IllegalStateException("Book list changed catalog since the replacement was prepared");
+				}
+				// Books added while the replacement was built
+				final Snapshot current = previous.snapshot;
+				for (int position = previousSize; position < current.size; position++) {
+					if (replacement.takeOver(current.books[position])) {
+						takenOver++;
+					}
+				}
+				replacement.reindexIds();
+				catalog = replacement;
+				catalogVersion++;
+			}
+			version.incrementAndGet();
+			return takenOver;
+		}
+	}
+
+	/**
+	 * First {@code size} books of an append only array. Appending writes past the end of the
+	 * snapshot, so readers of an older snapshot are not affected.
+	 */
+	private static final class Snapshot {
+		private final Book[] books;
+		private final int size;
+		private volatile Book[] array;
+
+		private Snapshot(Book[] books, int size) {
+			this.books = books;
+			this.size = size;
+		}
+
+		private Snapshot append(Book book) {
+			final Book[] target = size < books.length ? books : Arrays.copyOf(books, Math.max(size << 1, 16));
+			target[size] = book;
+			return new Snapshot(target, size + 1);
+		}
+
+		private Snapshot appendAll(List<Book> appended) {
+			if (appended.isEmpty()) {
+				return this;
+			}
+			final int newSize = size + appended.size();
+			final Book[] target = newSize <= books.length ? books
+					: Arrays.copyOf(books, Math.max(Math.max(size << 1, 16), newSize));
+			for (int i = 0; i < appended.size(); i++) {
+				target[size + i] = appended.get(i);
+			}
+			return new Snapshot(target, newSize);
+		}
+
+		private Book[] toArray() {
+			Book[] result = array;
+			if (result == null) {
+				result = books.length == size ? books : Arrays.copyOf(books, size);
+				array = result;
+			}
+			return result;
+		}
+
+		private Stream<Book> stream() {
+			return Arrays.stream(books, 0, size);
+		}
+	}
 }
@@ -0,0 +1,36 @@
+package com.home.you.bookstore.booklist;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Book list that records every change in a write-ahead log, so the list can be rebuilt after a
+ * restart. A change returns once its record is on disk, concurrent changes share the disk writes.
+ */
+public interface JournaledBookList extends BookList, Closeable {
+	/**
+	 * Loads the latest snapshot and replays the log after it into the book list, then starts
+	 * recording changes. Changes made before are rejected.
+	 *
+	 * @return number of books from the snapshot plus number of replayed records
+	 */
+	long recover() throws IOException;
+
+	/**
+	 * Writes a snapshot of the changes recorded so far and deletes the log it covers. Changes are
+	 * not blocked while the snapshot is written.
+	 *
+	 * @return number of books in the snapshot
+	 */
+	int snapshot() throws IOException;
+
+	/**
+	 * @param bookList list to replay the log into, usually an empty one
+	 * @param directory directory of the log, created if missing
+	 */
+	static JournaledBookList create(BookList bookList, Path directory) {
+		return new JournaledBookListImpl(bookList, new WriteAheadLog(directory, WriteAheadLog.DEFAULT_SEGMENT_SIZE),
+				new SnapshotStore(directory));
+	}
+}
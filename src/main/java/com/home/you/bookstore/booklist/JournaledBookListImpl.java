@@ -0,0 +1,413 @@
+package com.home.you.bookstore.booklist;
+
+import static com.home.you.bookstore.results.Status.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import com.home.you.bookstore.book.Book;
+import com.home.you.bookstore.book.Text;
+import com.home.you.bookstore.book.TextPool;
+import com.home.you.bookstore.utils.IdGenerator;
+import com.home.you.bookstore.utils.VarInts;
+
+/**
+ * Records the effect of every change in the log: the added books, or the books that were sold.
+ * Changes are applied and appended under one lock so the log has the order of the list, and wait
+ * for the disk outside of it.
+ * <p>
+ * The books of a change are split into records of about {@link #MAX_CHUNK_BYTES}, all but the last
+ * marked {@link #CONTINUED}. Replay only applies them with the last record, so a change is
+ * recovered whole or not at all.
+ * <p>
+ * A snapshot is built from the previous snapshot and the closed log segments on a separate list,
+ * so it never reads the live list and changes go on while it is written.
+ */
+class JournaledBookListImpl implements JournaledBookList {
+	private static final int ADD = 1;
+	private static final int ADD_ALL = 2;
+	private static final int SOLD = 3;
+	private static final int REPLACE = 4;
+	private static final int CONTINUED = 5;
+	private static final int MAX_CHUNK_BYTES = 1 << 20;
+	private static final long NOTHING_TO_SYNC = 0;
+
+	private final Object writeLock = new Object();
+	private final Object snapshotLock = new Object();
+	private final BookList bookList;
+	private final WriteAheadLog log;
+	private final SnapshotStore snapshots;
+	private volatile boolean recording;
+	private int maxReplayedId = Integer.MIN_VALUE;
+
+	JournaledBookListImpl(BookList bookList, WriteAheadLog log, SnapshotStore snapshots) {
+		this.bookList = bookList;
+		this.log = log;
+		this.snapshots = snapshots;
+	}
+
+	@Override
+	public long recover() throws IOException {
+		synchronized (writeLock) {
+			if (recording) {
+				throw new IllegalStateException("Journal already recovered");
+			}
+			final long snapshot = snapshots.latest();
+			long restored = 0;
+			if (snapshot != SnapshotStore.NONE) {
+				final List<Book> books = loadSnapshot(snapshot);
+				bookList.addAll(books);
+				restored += books.size();
+			}
+			restored += log.open(segmentAfter(snapshot), new Replay(bookList));
+			IdGenerator.reserveUpTo(maxReplayedId);
+			recording = true;
+			return restored;
+		}
+	}
+
+	@Override
+	public int snapshot() throws IOException {
+		synchronized (snapshotLock) {
+			checkRecording();
+			final long segment = log.rotate();
+			final long previous = snapshots.latest();
+			// Never searched, so the search index is left out
+			final BookList image = new BookListImpl(new ArrayList<>(), TrigramIndex::none);
+			if (previous != SnapshotStore.NONE) {
+				image.addAll(loadSnapshot(previous));
+			}
+			log.read(segmentAfter(previous), segment, new Replay(image));
+			final Book[] books = image.list(null);
+			snapshots.write(segment, Arrays.asList(books));
+			log.deleteBefore(segment);
+			snapshots.deleteBefore(segment);
+			return books.length;
+		}
+	}
+
+	@Override
+	public Book[] list(String searchString) {
+		return bookList.list(searchString);
+	}
+
+	@Override
+	public boolean add(Book book, int quantity) {
+		final byte[] record = encode(ADD, stream -> {
+			writeBook(stream, book);
+			VarInts.writeSigned(stream, quantity);
+		});
+		final boolean result;
+		final long position;
+		synchronized (writeLock) {
+			checkRecording();
+			result = bookList.add(book, quantity);
+			position = log.append(record);
+		}
+		log.sync(position);
+		return result;
+	}
+
+	@Override
+	public int addAll(Collection<Book> books) {
+		final List<byte[]> records = encodeBooks(ADD_ALL, books);
+		final int inserted;
+		final long position;
+		synchronized (writeLock) {
+			checkRecording();
+			inserted = bookList.addAll(books);
+			position = log.append(records);
+		}
+		log.sync(position);
+		return inserted;
+	}
+
+	@Override
+	public int[] buy(Book... books) {
+		final int[] statusCodes;
+		final long position;
+		synchronized (writeLock) {
+			checkRecording();
+			statusCodes = bookList.buy(books);
+			position = appendSold(books, statusCodes);
+		}
+		log.sync(position);
+		return statusCodes;
+	}
+
+	@Override
+	public int[] buyAll(Book... books) {
+		final int[] statusCodes;
+		final long position;
+		synchronized (writeLock) {
+			checkRecording();
+			statusCodes = bookList.buyAll(books);
+			position = appendSold(books, statusCodes);
+		}
+		log.sync(position);
+		return statusCodes;
+	}
+
+	@Override
+	public int[][] buyOrders(List<Book[]> orders) {
+		final int[][] statusCodes;
+		final long position;
+		synchronized (writeLock) {
+			checkRecording();
+			statusCodes = bookList.buyOrders(orders);
+			final List<Book> sold = new ArrayList<>();
+			for (int i = 0; i < statusCodes.length; i++) {
+				collectSold(orders.get(i), statusCodes[i], sold);
+			}
+			position = appendSold(sold);
+		}
+		log.sync(position);
+		return statusCodes;
+	}
+
+	/**
+	 * The catalog is built without the lock, only publishing it is recorded in order with the other
+	 * changes. Replaying the record builds the catalog again from the same list, so the same books
+	 * keep their stock.
+	 */
+	@Override
+	public Replacement prepareReplacement(Collection<Book> books) {
+		final List<byte[]> records = encodeBooks(REPLACE, books);
+		final Replacement replacement = bookList.prepareReplacement(books);
+		return () -> {
+			final int takenOver;
+			final long position;
+			synchronized (writeLock) {
+				checkRecording();
+				takenOver = replacement.publish();
+				position = log.append(records);
+			}
+			log.sync(position);
+			return takenOver;
+		};
+	}
+
+	@Override
+	public Optional<Book> find(Predicate<Book> predicate) {
+		return bookList.find(predicate);
+	}
+
+	@Override
+	public Book[] findByIds(int... ids) {
+		return bookList.findByIds(ids);
+	}
+
+	@Override
+	public long version() {
+		return bookList.version();
+	}
+
+	@Override
+	public long catalogVersion() {
+		return bookList.catalogVersion();
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (writeLock) {
+			recording = false;
+		}
+		log.close();
+	}
+
+	private void checkRecording() {
+		if (!recording) {
+			throw new IllegalStateException("Journal is not recovered or already closed");
+		}
+	}
+
+	private long appendSold(Book[] books, int[] statusCodes) {
+		final List<Book> sold = new ArrayList<>();
+		collectSold(books, statusCodes, sold);
+		return appendSold(sold);
+	}
+
+	private long appendSold(List<Book> sold) {
+		if (sold.isEmpty()) {
+			return NOTHING_TO_SYNC;
+		}
+		return log.append(encodeBooks(SOLD, sold));
+	}
+
+	private static void collectSold(Book[] books, int[] statusCodes, List<Book> sold) {
+		for (int i = 0; i < books.length; i++) {
+			if (statusCodes[i] == OK.value()) {
+				sold.add(books[i]);
+			}
+		}
+	}
+
+	private List<Book> loadSnapshot(long segment) throws IOException {
+		final List<Book> books = new ArrayList<>();
+		snapshots.load(segment, book -> {
+			maxReplayedId = Math.max(maxReplayedId, book.getId());
+			books.add(book);
+		});
+		return books;
+	}
+
+	private static long segmentAfter(long snapshot) {
+		return snapshot == SnapshotStore.NONE ? 0 : snapshot;
+	}
+
+	private List<Book> readBooks(InputStream stream) throws IOException {
+		final int count = VarInts.readUnsigned(stream);
+		final List<Book> books = new ArrayList<>(Math.min(count, stream.available()));
+		for (int i = 0; i < count; i++) {
+			books.add(readBook(stream));
+		}
+		return books;
+	}
+
+	private Book readBook(InputStream stream) throws IOException {
+		final int id = (int) VarInts.readSigned(stream);
+		final Text title = Text.of(VarInts.readString(stream));
+		final Text author = TextPool.authors().intern(VarInts.readString(stream));
+		final long priceCents = VarInts.readSigned(stream);
+		final int quantity = (int) VarInts.readSigned(stream);
+		maxReplayedId = Math.max(maxReplayedId, id);
+		return new Book(id, title, author, priceCents, quantity);
+	}
+
+	/**
+	 * @return records of the given type holding the books, all but the last of type
+	 *         {@link #CONTINUED}
+	 */
+	private static List<byte[]> encodeBooks(int type, Collection<Book> books) {
+		final List<byte[]> records = new ArrayList<>();
+		final ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+		int count = 0;
+		try {
+			for (Book book : books) {
+				writeBook(chunk, book);
+				count++;
+				if (chunk.size() >= MAX_CHUNK_BYTES) {
+					records.add(booksRecord(CONTINUED, count, chunk));
+					chunk.reset();
+					count = 0;
+				}
+			}
+			records.add(booksRecord(type, count, chunk));
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to encode journal record", e);
+		}
+		return records;
+	}
+
+	private static byte[] booksRecord(int type, int count, ByteArrayOutputStream books) throws IOException {
+		final ByteArrayOutputStream record = new ByteArrayOutputStream(books.size() + Integer.BYTES + 2);
+		record.write(type);
+		VarInts.writeUnsigned(record, count);
+		books.writeTo(record);
+		return record.toByteArray();
+	}
+
+	private static void writeBook(OutputStream stream, Book book) throws IOException {
+		VarInts.writeSigned(stream, book.getId());
+		VarInts.writeString(stream, book.getTitle());
+		VarInts.writeString(stream, book.getAuthor());
+		VarInts.writeSigned(stream, book.getPriceCents());
+		VarInts.writeSigned(stream, book.getQuantity());
+	}
+
+	private static byte[] encode(int type, RecordWriter writer) {
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		stream.write(type);
+		try {
+			writer.write(stream);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to encode journal record", e);
+		}
+		return stream.toByteArray();
+	}
+
+	private interface RecordWriter {
+		void write(OutputStream stream) throws IOException;
+	}
+
+	/**
+	 * Applies the records of one pass over the log to the given list. Books of {@link #CONTINUED}
+	 * records wait for the record that ends their change, books left waiting at the end of a
+	 * segment belong to a change cut off by a crash and are dropped.
+	 */
+	private final class Replay implements WriteAheadLog.Replay {
+		private final BookList target;
+		private final List<Book> continued = new ArrayList<>();
+
+		private Replay(BookList target) {
+			this.target = target;
+		}
+
+		@Override
+		public void accept(byte[] record) {
+			try {
+				final InputStream stream = new ByteArrayInputStream(record);
+				final int type = stream.read();
+				switch (type) {
+					case ADD: {
+						final Book book = readBook(stream);
+						target.add(book, (int) VarInts.readSigned(stream));
+						break;
+					}
+					case CONTINUED:
+						continued.addAll(readBooks(stream));
+						break;
+					case ADD_ALL:
+						target.addAll(withContinued(readBooks(stream)));
+						break;
+					case SOLD: {
+						final List<Book> sold = withContinued(readBooks(stream));
+						final int[] statusCodes = target.buy(sold.toArray(new Book[0]));
+						for (int i = 0; i < statusCodes.length; i++) {
+							if (statusCodes[i] != OK.value()) {
+								throw new IllegalStateException("Journal does not match the book list, can not sell " + sold.get(i));
+							}
+						}
+						break;
+					}
+					case REPLACE:
+						target.prepareReplacement(withContinued(readBooks(stream))).publish();
+						break;
+					default:
+						throw new IllegalStateException("Unknown journal record type " + type);
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException("Malformed journal record", e);
+			}
+		}
+
+		@Override
+		public boolean isComplete() {
+			return continued.isEmpty();
+		}
+
+		@Override
+		public void endSegment() {
+			continued.clear();
+		}
+
+		private List<Book> withContinued(List<Book> books) {
+			if (continued.isEmpty()) {
+				return books;
+			}
+			final List<Book> all = new ArrayList<>(continued);
+			all.addAll(books);
+			continued.clear();
+			return all;
+		}
+	}
+}
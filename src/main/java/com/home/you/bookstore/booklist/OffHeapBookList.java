@@ -0,0 +1,628 @@
+package com.home.you.bookstore.booklist;
+
+import static com.home.you.bookstore.Constants.*;
+import static com.home.you.bookstore.results.Status.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
+
+import com.home.you.bookstore.book.Book;
+import com.home.you.bookstore.book.BookKey;
+import com.home.you.bookstore.book.Text;
+import com.home.you.bookstore.book.TextPool;
+import com.home.you.bookstore.results.Status;
+import com.home.you.bookstore.utils.IntList;
+
+/**
+ * Thread safe book list that keeps ids, prices and quantities in off-heap columns and titles and
+ * authors in an off-heap string arena, the heap only holds the indexes. Books handed out are copies
+ * made when they are returned, stock is only changed through the list.
+ * <p>
+ * Writers are serialized, readers do not block apart from a short lock on the quantity of a book.
+ * A replacement catalog gets its own columns and arena and is published by swapping one reference.
+ */
+class OffHeapBookList implements BookList {
+	private static final int NO_ROW = -1;
+	private static final int LOCK_STRIPES = 64;
+
+	private final Object writeLock = new Object();
+	private final Object[] quantityLocks = new Object[LOCK_STRIPES];
+	// Replaced while holding every quantity lock, so a quantity changed under a lock is never lost
+	private volatile Catalog catalog = new Catalog();
+	private final AtomicLong version = new AtomicLong();
+
+	OffHeapBookList() {
+		for (int i = 0; i < quantityLocks.length; i++) {
+			quantityLocks[i] = new Object();
+		}
+	}
+
+	@Override
+	public Book[] list(String searchString) {
+		final Catalog current = catalog;
+		final int rows = current.size;
+		final Book[] result;
+		if (isBrowsing(searchString)) {
+			result = new Book[rows];
+			for (int row = 0; row < rows; row++) {
+				result[row] = book(current, row);
+			}
+		} else {
+			final String lowerCaseSearchString = searchString.toLowerCase();
+			final IntList candidates = current.trigramIndex.candidates(lowerCaseSearchString);
+			final List<Book> filteredList = new ArrayList<>();
+			if (candidates != null) {
+				for (int i = 0; i < candidates.size() && candidates.get(i) < rows; i++) {
+					addIfMatching(book(current, candidates.get(i)), lowerCaseSearchString, filteredList);
+				}
+			} else {
+				for (int row = 0; row < rows; row++) {
+					addIfMatching(book(current, row), lowerCaseSearchString, filteredList);
+				}
+			}
+			result = filteredList.toArray(new Book[0]);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean add(Book book, int quantity) {
+		final BookKey key = BookKey.of(book);
+		synchronized (writeLock) {
+			final Catalog current = catalog;
+			final int row = current.findRow(key);
+			if (row != NO_ROW) {
+				addQuantity(current, row, quantity);
+			} else {
+				current.append(book, key);
+			}
+		}
+		version.incrementAndGet();
+		return true;
+	}
+
+	@Override
+	public int addAll(Collection<Book> books) {
+		int inserted = 0;
+		synchronized (writeLock) {
+			final Catalog current = catalog;
+			for (Book book : books) {
+				final BookKey key = BookKey.of(book);
+				final int row = current.findRow(key);
+				if (row != NO_ROW) {
+					addQuantity(current, row, book.getQuantity());
+				} else {
+					current.append(book, key);
+					inserted++;
+				}
+			}
+		}
+		version.incrementAndGet();
+		return inserted;
+	}
+
+	@Override
+	public int[] buy(Book... books) {
+		final int[] statusCode = buyOrder(books);
+		version.incrementAndGet();
+		return statusCode;
+	}
+
+	@Override
+	public int[][] buyOrders(List<Book[]> orders) {
+		final int[][] statusCodes = new int[orders.size()][];
+		for (int i = 0; i < statusCodes.length; i++) {
+			statusCodes[i] = buyAllOrder(orders.get(i));
+		}
+		version.incrementAndGet();
+		return statusCodes;
+	}
+
+	private int[] buyOrder(Book[] books) {
+		final int[] statusCode = new int[books.length];
+		for (int i = 0; i < books.length; i++) {
+			statusCode[i] = reserve(BookKey.of(books[i])).value();
+		}
+		return statusCode;
+	}
+
+	@Override
+	public int[] buyAll(Book... books) {
+		final int[] statusCode = buyAllOrder(books);
+		version.incrementAndGet();
+		return statusCode;
+	}
+
+	private int[] buyAllOrder(Book[] books) {
+		final int[] statusCode = new int[books.length];
+		final boolean[] reserved = new boolean[books.length];
+		boolean complete = true;
+		for (int i = 0; i < books.length; i++) {
+			final BookKey key = BookKey.of(books[i]);
+			final Status status;
+			if (complete) {
+				status = reserve(key);
+				if (status == OK) {
+					reserved[i] = true;
+				} else {
+					complete = false;
+				}
+			} else {
+				final Catalog current = catalog;
+				final int row = current.findRow(key);
+				status = row == NO_ROW ? DOES_NOT_EXIST : quantity(current, row) > 0 ? CANCELLED : NOT_IN_STOCK;
+			}
+			statusCode[i] = status.value();
+		}
+		if (!complete) {
+			for (int i = 0; i < reserved.length; i++) {
+				if (reserved[i]) {
+					release(BookKey.of(books[i]));
+					statusCode[i] = CANCELLED.value();
+				}
+			}
+		}
+		return statusCode;
+	}
+
+	@Override
+	public Optional<Book> find(Predicate<Book> predicate) {
+		final Catalog current = catalog;
+		final int rows = current.size;
+		for (int row = 0; row < rows; row++) {
+			final Book book = book(current, row);
+			if (predicate.test(book)) {
+				return Optional.of(book);
+			}
+		}
+		return Optional.empty();
+	}
+
+	@Override
+	public Book[] findByIds(int... ids) {
+		final Catalog current = catalog;
+		final Book[] found = new Book[ids.length];
+		int count = 0;
+		for (int id : ids) {
+			final int row = current.findId(id);
+			if (row != NO_ROW) {
+				found[count++] = book(current, row);
+			}
+		}
+		return count == found.length ? found : Arrays.copyOf(found, count);
+	}
+
+	@Override
+	public long version() {
+		return version.get();
+	}
+
+	/**
+	 * Same as {@link #version()}, the returned books are copies that do not follow stock changes.
+	 */
+	@Override
+	public long catalogVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Builds new columns and a new string arena, the current ones are released once the last
+	 * reader of the old catalog is done.
+	 */
+	@Override
+	public Replacement prepareReplacement(Collection<Book> books) {
+		final Catalog current = catalog;
+		final int currentSize = current.size;
+		final Catalog replacement = new Catalog();
+		final BitSet takenOverRows = new BitSet();
+		for (Book book : books) {
+			final BookKey key = BookKey.of(book);
+			final int listed = replacement.findRow(key);
+			if (listed != NO_ROW) {
+				if (!takenOverRows.get(listed)) {
+					replacement.setQuantity(listed, replacement.quantity(listed) + book.getQuantity());
+				}
+				continue;
+			}
+			final int existing = current.findRow(key);
+			if (existing != NO_ROW) {
+				takenOverRows.set(replacement.size);
+				replacement.append(book(current, existing), key);
+			} else {
+				replacement.append(book, key);
+			}
+		}
+		return new PreparedCatalog(current, currentSize, replacement, takenOverRows);
+	}
+
+	/**
+	 * @return bytes allocated outside the heap for columns and strings of the current catalog
+	 */
+	long offHeapBytes() {
+		return catalog.offHeapBytes();
+	}
+
+	/**
+	 * Takes one of the book with the given key in the current catalog, again in the new one if the
+	 * catalog is replaced meanwhile.
+	 */
+	private Status reserve(BookKey key) {
+		while (true) {
+			final Catalog current = catalog;
+			final int row = current.findRow(key);
+			if (row == NO_ROW) {
+				return DOES_NOT_EXIST;
+			}
+			synchronized (quantityLock(row)) {
+				if (catalog == current) {
+					final int quantity = current.quantity(row);
+					if (quantity > 0) {
+						current.setQuantity(row, quantity - 1);
+						return OK;
+					}
+					return NOT_IN_STOCK;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gives back one reserved book, to the new catalog if the catalog is replaced meanwhile, the
+	 * reservation was copied with the quantity.
+	 */
+	private void release(BookKey key) {
+		while (true) {
+			final Catalog current = catalog;
+			final int row = current.findRow(key);
+			if (row == NO_ROW) {
+				return;
+			}
+			synchronized (quantityLock(row)) {
+				if (catalog == current) {
+					current.setQuantity(row, current.quantity(row) + 1);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Only for the writer, which is not racing a replacement.
+	 */
+	private void addQuantity(Catalog current, int row, int value) {
+		synchronized (quantityLock(row)) {
+			current.setQuantity(row, current.quantity(row) + value);
+		}
+	}
+
+	private int quantity(Catalog current, int row) {
+		synchronized (quantityLock(row)) {
+			return current.quantity(row);
+		}
+	}
+
+	private Book book(Catalog current, int row) {
+		final Text author = current.arena.intern(current.chunk(row).authors.get(row & Chunk.MASK), TextPool.authors());
+		return new Book(current.id(row), Text.of(current.title(row)), author, current.priceCents(row), quantity(current, row));
+	}
+
+	private Object quantityLock(int row) {
+		return quantityLocks[row & (LOCK_STRIPES - 1)];
+	}
+
+	private void withAllQuantityLocks(int stripe, Runnable action) {
+		if (stripe == LOCK_STRIPES) {
+			action.run();
+		} else {
+			synchronized (quantityLocks[stripe]) {
+				withAllQuantityLocks(stripe + 1, action);
+			}
+		}
+	}
+
+	private static void addIfMatching(Book book, String lowerCaseSearchString, List<Book> result) {
+		if (book.matchLowerCase(lowerCaseSearchString)) {
+			result.add(book);
+		}
+	}
+
+	private static boolean isBrowsing(String searchString) {
+		return searchString == null || EMPTY_STRING.equals(searchString);
+	}
+
+	private static ByteBuffer allocate(int bytes) {
+		return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Columns, strings and indexes of the listed books. Rows are appended by the writer, only
+	 * quantities change after that, apart from rows of a catalog that is not published yet.
+	 */
+	private static final class Catalog {
+		private final StringArena arena = new StringArena();
+		private final Map<String, Long> authors = new HashMap<>();
+		private final TrigramIndex trigramIndex = new TrigramIndex();
+		private final RowTable keyIndex = new RowTable();
+		private RowTable idIndex = new RowTable();
+		private volatile Chunk[] chunks = new Chunk[0];
+		private volatile int size;
+
+		private void append(Book book, BookKey key) {
+			final int row = size;
+			if (row == chunks.length * Chunk.ROWS) {
+				final Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+				grown[chunks.length] = new Chunk();
+				chunks = grown;
+			}
+			write(row, book);
+			chunk(row).keyHashes.put(row & Chunk.MASK, key.hashCode());
+			trigramIndex.add(row, book);
+			keyIndex.insert(key.hashCode(), row, this::keyHash);
+			if (findId(book.getId()) == NO_ROW) {
+				idIndex.insert(book.getId(), row, this::id);
+			}
+			size = row + 1;
+		}
+
+		/**
+		 * Puts the given book in place of the row with the same key, only for a catalog that is not
+		 * published yet.
+		 *
+		 * @return row of the book, {@link #NO_ROW} if the catalog has no book with the same key
+		 */
+		private int takeOver(Book book) {
+			final int row = findRow(BookKey.of(book));
+			if (row == NO_ROW) {
+				return NO_ROW;
+			}
+			final int previousId = id(row);
+			write(row, book);
+			if (previousId != book.getId()) {
+				idIndex = new RowTable();
+				for (int indexed = 0; indexed < size; indexed++) {
+					if (findId(id(indexed)) == NO_ROW) {
+						idIndex.insert(id(indexed), indexed, this::id);
+					}
+				}
+			}
+			return row;
+		}
+
+		private void write(int row, Book book) {
+			final Chunk chunk = chunk(row);
+			final int index = row & Chunk.MASK;
+			chunk.ids.put(index, book.getId());
+			chunk.prices.put(index, book.getPriceCents());
+			chunk.quantities.put(index, book.getQuantity());
+			chunk.titles.put(index, arena.add(book.getTitle()));
+			chunk.authors.put(index, authors.computeIfAbsent(book.getAuthor(), arena::add));
+		}
+
+		private int findRow(BookKey key) {
+			final int hash = key.hashCode();
+			return keyIndex.find(hash, row -> keyHash(row) == hash && key.equals(BookKey.of(title(row), author(row), priceCents(row))));
+		}
+
+		private int findId(int id) {
+			return idIndex.find(id, candidate -> id(candidate) == id);
+		}
+
+		private int quantity(int row) {
+			return chunk(row).quantities.get(row & Chunk.MASK);
+		}
+
+		private void setQuantity(int row, int quantity) {
+			chunk(row).quantities.put(row & Chunk.MASK, quantity);
+		}
+
+		private int id(int row) {
+			return chunk(row).ids.get(row & Chunk.MASK);
+		}
+
+		private int keyHash(int row) {
+			return chunk(row).keyHashes.get(row & Chunk.MASK);
+		}
+
+		private String title(int row) {
+			return arena.get(chunk(row).titles.get(row & Chunk.MASK));
+		}
+
+		private String author(int row) {
+			return arena.get(chunk(row).authors.get(row & Chunk.MASK));
+		}
+
+		private long priceCents(int row) {
+			return chunk(row).prices.get(row & Chunk.MASK);
+		}
+
+		private Chunk chunk(int row) {
+			return chunks[row >>> Chunk.SHIFT];
+		}
+
+		private long offHeapBytes() {
+			return (long) chunks.length * Chunk.BYTES + arena.bytes();
+		}
+	}
+
+	private final class PreparedCatalog implements Replacement {
+		private final Catalog previous;
+		private final int previousSize;
+		private final Catalog replacement;
+		// Rows of the replacement that keep the stock of the same book in the previous catalog
+		private final BitSet takenOverRows;
+
+		private PreparedCatalog(Catalog previous, int previousSize, Catalog replacement, BitSet takenOverRows) {
+			this.previous = previous;
+			this.previousSize = previousSize;
+			this.replacement = replacement;
+			this.takenOverRows = takenOverRows;
+		}
+
+		@Override
+		public int publish() {
+			final int takenOver;
+			synchronized (writeLock) {
+				if (catalog != previous) {
+					throw new IllegalStateException("Book list changed catalog since the replacement was prepared");
+				}
+				// Books added while the replacement was built
+				for (int row = previousSize; row < previous.size; row++) {
+					final int target = replacement.takeOver(book(previous, row));
+					if (target != NO_ROW) {
+						takenOverRows.set(target);
+					}
+				}
+				withAllQuantityLocks(0, () -> {
+					for (int row = takenOverRows.nextSetBit(0); row >= 0; row = takenOverRows.nextSetBit(row + 1)) {
+						final BookKey key = BookKey.of(replacement.title(row), replacement.author(row), replacement.priceCents(row));
+						replacement.setQuantity(row, previous.quantity(previous.findRow(key)));
+					}
+					catalog = replacement;
+				});
+				takenOver = takenOverRows.cardinality();
+			}
+			version.incrementAndGet();
+			return takenOver;
+		}
+	}
+
+	/**
+	 * Columns of a fixed number of rows. Rows are written once by the writer before the size of the
+	 * list is raised, only quantities change after that.
+	 */
+	private static final class Chunk {
+		private static final int SHIFT = 16;
+		private static final int ROWS = 1 << SHIFT;
+		private static final int MASK = ROWS - 1;
+		private static final int BYTES = ROWS * (3 * Integer.BYTES + 3 * Long.BYTES);
+
+		private final IntBuffer ids = allocate(ROWS * Integer.BYTES).asIntBuffer();
+		private final LongBuffer prices = allocate(ROWS * Long.BYTES).asLongBuffer();
+		private final IntBuffer quantities = allocate(ROWS * Integer.BYTES).asIntBuffer();
+		private final IntBuffer keyHashes = allocate(ROWS * Integer.BYTES).asIntBuffer();
+		private final LongBuffer titles = allocate(ROWS * Long.BYTES).asLongBuffer();
+		private final LongBuffer authors = allocate(ROWS * Long.BYTES).asLongBuffer();
+	}
+
+	/**
+	 * Append only UTF-8 strings, each prefixed by its length. An address is the page number in the
+	 * upper and the position in the page in the lower 32 bits.
+	 */
+	private static final class StringArena {
+		private static final int PAGE_SIZE = 1 << 20;
+
+		private volatile ByteBuffer[] pages = new ByteBuffer[0];
+		private long bytes;
+
+		private long add(String value) {
+			final byte[] encoded = value.getBytes(UTF8);
+			final int needed = Integer.BYTES + encoded.length;
+			ByteBuffer page = pages.length > 0 ? pages[pages.length - 1] : null;
+			if (page == null || page.remaining() < needed) {
+				page = allocate(Math.max(PAGE_SIZE, needed));
+				final ByteBuffer[] grown = Arrays.copyOf(pages, pages.length + 1);
+				grown[pages.length] = page;
+				pages = grown;
+				bytes += page.capacity();
+			}
+			final long address = ((long) (pages.length - 1) << Integer.SIZE) | page.position();
+			page.putInt(encoded.length);
+			page.put(encoded);
+			return address;
+		}
+
+		private String get(long address) {
+			return new String(bytes(address), UTF8);
+		}
+
+		private Text intern(long address, TextPool pool) {
+			final byte[] encoded = bytes(address);
+			return pool.intern(encoded, 0, encoded.length);
+		}
+
+		private byte[] bytes(long address) {
+			final ByteBuffer page = pages[(int) (address >>> Integer.SIZE)];
+			final int position = (int) address;
+			final byte[] encoded = new byte[page.getInt(position)];
+			// A duplicate has its own position, so concurrent readers do not interfere
+			final ByteBuffer view = page.duplicate();
+			view.position(position + Integer.BYTES);
+			view.get(encoded);
+			return encoded;
+		}
+
+		private long bytes() {
+			return bytes;
+		}
+	}
+
+	/**
+	 * Open addressing table of row numbers. The caller gives the hash and decides which row matches,
+	 * one writer at a time, lookups may run concurrently (same rules as
+	 * {@link com.home.you.bookstore.utils.IntHashMap}).
+	 */
+	private static final class RowTable {
+		private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+		// Row plus one, zero is a free slot
+		private volatile AtomicIntegerArray slots = new AtomicIntegerArray(16);
+		private int count;
+
+		private int find(int hash, IntPredicate matches) {
+			final AtomicIntegerArray table = slots;
+			final int mask = table.length() - 1;
+			for (int index = spread(hash) & mask;; index = (index + 1) & mask) {
+				final int slot = table.get(index);
+				if (slot == 0) {
+					return NO_ROW;
+				}
+				if (matches.test(slot - 1)) {
+					return slot - 1;
+				}
+			}
+		}
+
+		private void insert(int hash, int row, IntUnaryOperator hashOfRow) {
+			if (++count > slots.length() >> 1) {
+				final AtomicIntegerArray resized = new AtomicIntegerArray(slots.length() << 1);
+				for (int i = 0; i < slots.length(); i++) {
+					final int slot = slots.get(i);
+					if (slot != 0) {
+						place(resized, hashOfRow.applyAsInt(slot - 1), slot);
+					}
+				}
+				slots = resized;
+			}
+			place(slots, hash, row + 1);
+		}
+
+		private static void place(AtomicIntegerArray table, int hash, int slot) {
+			final int mask = table.length() - 1;
+			int index = spread(hash) & mask;
+			while (table.get(index) != 0) {
+				index = (index + 1) & mask;
+			}
+			table.lazySet(index, slot);
+		}
+
+		private static int spread(int hash) {
+			final int h = hash * GOLDEN_RATIO;
+			return h ^ (h >>> 16);
+		}
+	}
+}
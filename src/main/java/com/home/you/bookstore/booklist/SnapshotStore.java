@@ -0,0 +1,158 @@
+package com.home.you.bookstore.booklist;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.home.you.bookstore.book.Book;
+import com.home.you.bookstore.book.BookParser;
+
+/**
+ * Snapshots of a book list in the binary form of {@link BookParser}, named after the first log
+ * segment they do not cover. A snapshot is written to a temporary file and moved in place once it
+ * is on disk, and read through memory mappings of the file. The move is forced to disk with the
+ * directory before {@link #write} returns, so the log it covers can be deleted afterwards.
+ */
+class SnapshotStore {
+	static final long NONE = -1;
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SNAPSHOT_SUFFIX = ".bin";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	private static final int MAGIC = 0x424f4f4b;
+	private static final int MAGIC_SIZE = 4;
+	private static final long MAP_WINDOW = 1L << 28;
+
+	private final Path directory;
+
+	SnapshotStore(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @return segment of the latest snapshot, {@link #NONE} when there is none
+	 */
+	long latest() throws IOException {
+		final List<Long> segments = segments();
+		return segments.isEmpty() ? NONE : segments.get(segments.size() - 1);
+	}
+
+	void load(long segment, Consumer<Book> consumer) throws IOException {
+		final Path path = snapshotPath(segment);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final InputStream stream = new MappedInputStream(channel);
+			final ByteBuffer magic = ByteBuffer.allocate(MAGIC_SIZE);
+			if (stream.read(magic.array()) != MAGIC_SIZE || magic.getInt() != MAGIC) {
+				throw new IllegalStateException("Not a book list snapshot \"" + path + "\"");
+			}
+			BookParser.decodeBinary(stream, consumer);
+		}
+	}
+
+	void write(long segment, Iterable<Book> books) throws IOException {
+		Files.createDirectories(directory);
+		final Path temporary = directory.resolve(snapshotPath(segment).getFileName() + TEMPORARY_SUFFIX);
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			final ByteBuffer magic = ByteBuffer.allocate(MAGIC_SIZE).putInt(MAGIC);
+			magic.flip();
+			channel.write(magic);
+			final OutputStream stream = Channels.newOutputStream(channel);
+			BookParser.encodeBinary(books, stream);
+			channel.force(true);
+		}
+		Files.move(temporary, snapshotPath(segment), StandardCopyOption.ATOMIC_MOVE);
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Deletes the snapshots older than the given one.
+	 */
+	void deleteBefore(long segment) throws IOException {
+		for (long existing : segments()) {
+			if (existing < segment) {
+				Files.deleteIfExists(snapshotPath(existing));
+			}
+		}
+	}
+
+	private List<Long> segments() throws IOException {
+		final List<Long> segments = new ArrayList<>();
+		if (Files.isDirectory(directory)) {
+			try (Stream<Path> files = Files.list(directory)) {
+				files.map(path -> path.getFileName().toString())
+						.filter(name -> name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX))
+						.forEach(name -> segments.add(Long.parseLong(
+								name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()), 16)));
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private Path snapshotPath(long segment) {
+		return directory.resolve(String.format("%s%016x%s", SNAPSHOT_PREFIX, segment, SNAPSHOT_SUFFIX));
+	}
+
+	/**
+	 * Reads a file through consecutive mappings of a window, a single mapping is limited to 2 GiB.
+	 */
+	private static final class MappedInputStream extends InputStream {
+		private final FileChannel channel;
+		private long mapped;
+		private MappedByteBuffer window;
+
+		private MappedInputStream(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return nextWindow() ? window.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			if (!nextWindow()) {
+				return -1;
+			}
+			final int count = Math.min(length, window.remaining());
+			window.get(bytes, offset, count);
+			return count;
+		}
+
+		/**
+		 * @return false at the end of the file
+		 */
+		private boolean nextWindow() throws IOException {
+			if (window != null && window.hasRemaining()) {
+				return true;
+			}
+			final long size = channel.size();
+			if (mapped >= size) {
+				return false;
+			}
+			final long length = Math.min(MAP_WINDOW, size - mapped);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, mapped, length);
+			mapped += length;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.home.you.bookstore.booklist;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.home.you.bookstore.book.Book;
+import com.home.you.bookstore.utils.IntList;
+
+/**
+ * Inverted index from every three character sequence of the lower cased title and author to the
+ * positions of the books containing it. Positions must be added in increasing order by a single
+ * writer at a time, lookups may run concurrently.
+ */
+class TrigramIndex {
+	private static final int GRAM_SIZE = 3;
+	private static final long GRAM_MIX = 0x9E3779B97F4A7C15L;
+	private static final IntList NO_CANDIDATES = new IntList(1);
+	private static final TrigramIndex NONE = new TrigramIndex() {
+		@Override
+		void add(int position, Book book) {
+		}
+
+		@Override
+		IntList candidates(String query) {
+			return null;
+		}
+	};
+
+	private final Map<Long, IntList> postings = new ConcurrentHashMap<>();
+
+	/**
+	 * Index that keeps nothing, for lists that are never searched.
+	 */
+	static TrigramIndex none() {
+		return NONE;
+	}
+
+	void add(int position, Book book) {
+		addText(position, book.getTitleText().lowerCase());
+		addText(position, book.getAuthorText().lowerCase());
+	}
+
+	/**
+	 * @return positions of books that may match the lower cased query, in increasing order, or null
+	 *         if the query is too short to be answered by the index
+	 */
+	IntList candidates(String query) {
+		if (query.length() < GRAM_SIZE) {
+			return null;
+		}
+		final List<IntList> lists = new ArrayList<>();
+		for (int i = 0; i + GRAM_SIZE <= query.length(); i++) {
+			final IntList posting = postings.get(gram(query, i));
+			if (posting == null) {
+				return NO_CANDIDATES;
+			}
+			lists.add(posting);
+		}
+		lists.sort(Comparator.comparingInt(IntList::size));
+		IntList result = lists.get(0);
+		for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+			result = intersect(result, lists.get(i));
+		}
+		return result;
+	}
+
+	private void addText(int position, String text) {
+		for (int i = 0; i + GRAM_SIZE <= text.length(); i++) {
+			final IntList posting = postings.computeIfAbsent(gram(text, i), g -> new IntList());
+			if (posting.isEmpty() || posting.last() != position) {
+				posting.add(position);
+			}
+		}
+	}
+
+	private static IntList intersect(IntList smaller, IntList larger) {
+		final IntList result = new IntList(smaller.size());
+		int j = 0;
+		for (int i = 0; i < smaller.size() && j < larger.size(); i++) {
+			final int position = smaller.get(i);
+			while (j < larger.size() && larger.get(j) < position) {
+				j++;
+			}
+			if (j < larger.size() && larger.get(j) == position) {
+				result.add(position);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The packed characters are multiplied by an odd constant, which keeps grams distinct but spreads
+	 * them over the whole hash code instead of the few bits that differ between ASCII characters.
+	 */
+	private static long gram(String text, int offset) {
+		final long packed = ((long) text.charAt(offset) << 32) | ((long) text.charAt(offset + 1) << 16)
+				| text.charAt(offset + 2);
+		return packed * GRAM_MIX;
+	}
+}
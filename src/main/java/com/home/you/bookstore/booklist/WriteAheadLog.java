@@ -0,0 +1,358 @@
+package com.home.you.bookstore.booklist;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of records kept in numbered segment files of a directory. Records are buffered
+ * by {@link #append(byte[])} and made durable by {@link #sync(long)}: the first thread to sync
+ * writes and forces everything appended so far, threads arriving meanwhile wait for it and are
+ * covered by the same force.
+ * <p>
+ * A record is stored as its length, its CRC32 and its bytes. The records appended together end up
+ * in one segment. A record torn by a crash is cut off the last segment when the log is opened,
+ * together with the records before it that the {@link Replay} does not see as a complete change.
+ */
+class WriteAheadLog implements Closeable {
+	static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+	private static final String SEGMENT_PREFIX = "wal-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final int HEADER_SIZE = 8;
+	static final int MAX_RECORD_SIZE = 64 << 20;
+
+	private final Path directory;
+	private final long segmentSize;
+	private final Object syncLock = new Object();
+	// Guarded by this
+	private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private long appended;
+	// Guarded by syncLock
+	private long durable;
+	private boolean flushing;
+	private IOException failure;
+	// Only used by the thread flushing
+	private FileChannel segment;
+	private long segmentNumber;
+
+	WriteAheadLog(Path directory, long segmentSize) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Passes every record from the given segment on to the consumer and opens a new segment for
+	 * appending.
+	 *
+	 * @return number of records read
+	 */
+	long open(long fromSegment, Replay replay) throws IOException {
+		Files.createDirectories(directory);
+		final List<Long> segments = segmentNumbers();
+		long records = 0;
+		for (int i = 0; i < segments.size(); i++) {
+			if (segments.get(i) >= fromSegment) {
+				records += read(segmentPath(segments.get(i)), i == segments.size() - 1, replay);
+			}
+		}
+		final long next = segments.isEmpty() ? fromSegment : Math.max(fromSegment, segments.get(segments.size() - 1) + 1);
+		startSegment(next);
+		return records;
+	}
+
+	/**
+	 * Passes the records of the closed segments in the given range to the consumer.
+	 */
+	void read(long fromSegment, long toSegment, Replay replay) throws IOException {
+		for (long number : segmentNumbers()) {
+			if (number >= fromSegment && number < toSegment) {
+				read(segmentPath(number), false, replay);
+			}
+		}
+	}
+
+	/**
+	 * Closes the current segment once everything appended so far is in it, later records go to a
+	 * new segment.
+	 *
+	 * @return number of the new segment
+	 */
+	long rotate() {
+		acquireFlush(Long.MAX_VALUE);
+		long flushed = 0;
+		long next = segmentNumber + 1;
+		IOException error = null;
+		try {
+			flushed = flush();
+			next = segmentNumber + 1;
+			segment.close();
+			startSegment(next);
+		} catch (IOException e) {
+			error = e;
+		}
+		releaseFlush(flushed, error);
+		return next;
+	}
+
+	/**
+	 * Deletes the segments before the given one.
+	 */
+	void deleteBefore(long number) throws IOException {
+		for (long existing : segmentNumbers()) {
+			if (existing < number) {
+				Files.deleteIfExists(segmentPath(existing));
+			}
+		}
+	}
+
+	/**
+	 * @return position to pass to {@link #sync(long)} to wait until the record is durable
+	 * @throws IllegalArgumentException if the record is larger than a record can be read back
+	 */
+	synchronized long append(byte[] record) {
+		checkSize(record);
+		return write(record);
+	}
+
+	/**
+	 * Appends the records together, they end up in the same segment.
+	 *
+	 * @return position to pass to {@link #sync(long)} to wait until the records are durable
+	 * @throws IllegalArgumentException if a record is larger than a record can be read back, no
+	 *                                  record is appended then
+	 */
+	synchronized long append(List<byte[]> records) {
+		for (byte[] record : records) {
+			checkSize(record);
+		}
+		long position = appended;
+		for (byte[] record : records) {
+			position = write(record);
+		}
+		return position;
+	}
+
+	private long write(byte[] record) {
+		final CRC32 crc = new CRC32();
+		crc.update(record, 0, record.length);
+		writeInt(pending, record.length);
+		writeInt(pending, (int) crc.getValue());
+		pending.write(record, 0, record.length);
+		appended += HEADER_SIZE + record.length;
+		return appended;
+	}
+
+	/**
+	 * Waits until every record up to the given position is on disk.
+	 *
+	 * @throws IllegalStateException if the log can not be written
+	 */
+	void sync(long position) {
+		if (!acquireFlush(position)) {
+			return;
+		}
+		long flushed = 0;
+		IOException error = null;
+		try {
+			flushed = flush();
+		} catch (IOException e) {
+			error = e;
+		}
+		releaseFlush(flushed, error);
+	}
+
+	@Override
+	public void close() throws IOException {
+		final long position;
+		synchronized (this) {
+			position = appended;
+		}
+		if (segment != null) {
+			sync(position);
+			segment.close();
+		}
+	}
+
+	/**
+	 * Waits until the given position is durable or no other thread is flushing.
+	 *
+	 * @return true if the caller has to flush, false if the position is already durable
+	 */
+	private boolean acquireFlush(long position) {
+		boolean interrupted = false;
+		try {
+			synchronized (syncLock) {
+				while (durable < position && failure == null && flushing) {
+					try {
+						syncLock.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				if (failure != null) {
+					throw new IllegalStateException("Journal is not writable", failure);
+				}
+				if (durable >= position) {
+					return false;
+				}
+				flushing = true;
+				return true;
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void releaseFlush(long flushed, IOException error) {
+		synchronized (syncLock) {
+			flushing = false;
+			if (error != null) {
+				failure = error;
+			} else {
+				durable = flushed;
+			}
+			syncLock.notifyAll();
+		}
+		if (error != null) {
+			throw new IllegalStateException("Failed to write journal", error);
+		}
+	}
+
+	private long flush() throws IOException {
+		final byte[] data;
+		final long position;
+		synchronized (this) {
+			data = pending.toByteArray();
+			pending = new ByteArrayOutputStream();
+			position = appended;
+		}
+		final ByteBuffer buffer = ByteBuffer.wrap(data);
+		while (buffer.hasRemaining()) {
+			segment.write(buffer);
+		}
+		segment.force(false);
+		if (segment.position() >= segmentSize) {
+			segment.close();
+			startSegment(segmentNumber + 1);
+		}
+		return position;
+	}
+
+	private void startSegment(long number) throws IOException {
+		segment = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		segmentNumber = number;
+	}
+
+	private static long read(Path path, boolean last, Replay replay) throws IOException {
+		long records = 0;
+		long valid = 0;
+		long complete = 0;
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			while (true) {
+				final byte[] record = readRecord(input);
+				if (record == null) {
+					break;
+				}
+				replay.accept(record);
+				valid += HEADER_SIZE + record.length;
+				records++;
+				if (replay.isComplete()) {
+					complete = valid;
+				}
+			}
+		}
+		replay.endSegment();
+		if (valid < Files.size(path) && !last) {
+			throw new IllegalStateException("Corrupt journal segment \"" + path + "\" at " + valid);
+		}
+		if (complete < Files.size(path) && last) {
+			// A torn record, and the records of its change that made it to disk
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				channel.truncate(complete);
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * @return next record, null at the end of the segment or at a torn record
+	 */
+	private static byte[] readRecord(DataInputStream input) throws IOException {
+		try {
+			final int length = input.readInt();
+			final int checksum = input.readInt();
+			if (length < 0 || length > MAX_RECORD_SIZE) {
+				return null;
+			}
+			final byte[] record = new byte[length];
+			input.readFully(record);
+			final CRC32 crc = new CRC32();
+			crc.update(record, 0, length);
+			return (int) crc.getValue() == checksum ? record : null;
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	private List<Long> segmentNumbers() throws IOException {
+		final List<Long> numbers = new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory)) {
+			files.map(path -> path.getFileName().toString())
+					.filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+					.forEach(name -> numbers.add(Long.parseLong(
+							name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()), 16)));
+		}
+		Collections.sort(numbers);
+		return numbers;
+	}
+
+	private Path segmentPath(long number) {
+		return directory.resolve(String.format("%s%016x%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+	}
+
+	private static void checkSize(byte[] record) {
+		if (record.length > MAX_RECORD_SIZE) {
+			throw new IllegalArgumentException("Journal record of " + record.length + " bytes exceeds " + MAX_RECORD_SIZE);
+		}
+	}
+
+	/**
+	 * Receives the records of the log in order. Records of one change are appended together and
+	 * may be split by a crash, the log only keeps them once the replay has seen the whole change.
+	 */
+	interface Replay {
+		void accept(byte[] record);
+
+		/**
+		 * @return true if the records passed so far end with a complete change
+		 */
+		boolean isComplete();
+
+		/**
+		 * Called at the end of every segment, a change never continues into the next one.
+		 */
+		void endSegment();
+	}
+
+	private static void writeInt(ByteArrayOutputStream stream, int value) {
+		stream.write(value >>> 24);
+		stream.write(value >>> 16);
+		stream.write(value >>> 8);
+		stream.write(value);
+	}
+}
@@ -10,9 +10,22 @@ public class RestConstants {
 
 	// Response codes
 	public static final int HTTP_OK = 200;
+	public static final int HTTP_NOT_MODIFIED = 304;
+	public static final int HTTP_SERVICE_UNAVAILABLE = 503;
 
 	// Headers
 	public static final String HTTP_HEADER_USER_AGENT = "User-Agent";
+	public static final String HTTP_HEADER_SESSION_TOKEN = "X-Session-Token";
+	public static final String HTTP_HEADER_ETAG = "ETag";
+	public static final String HTTP_HEADER_IF_NONE_MATCH = "If-None-Match";
+	public static final String HTTP_HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+	public static final String HTTP_HEADER_LAST_MODIFIED = "Last-Modified";
+	public static final String HTTP_HEADER_ACCEPT = "Accept";
+	public static final String HTTP_HEADER_CONTENT_TYPE = "Content-Type";
+	public static final String HTTP_HEADER_VARY = "Vary";
 
 	public static final String URL_WHITESPACE = "%20";
+
+	// Limit on connecting to an upstream server and on each read from it
+	public static final int UPSTREAM_TIMEOUT_MILLIS = 30_000;
 }
@@ -0,0 +1,26 @@
+package com.home.you.bookstore.rest;
+
+/**
+ * Encoding of request and response bodies. Text is the default, the binary format is used when a
+ * client asks for it through the Accept or Content-Type header.
+ */
+public enum WireFormat {
+    TEXT("text/plain; charset=utf-8"), BINARY("application/x-bookstore-binary");
+
+    private final String contentType;
+
+    WireFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * @return format named by the header value, text if the header is missing or unknown
+     */
+    public static WireFormat of(String header) {
+        return header != null && header.contains(BINARY.contentType) ? BINARY : TEXT;
+    }
+}
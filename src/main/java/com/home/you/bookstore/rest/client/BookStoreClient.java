@@ -2,6 +2,7 @@ package com.home.you.bookstore.rest.client;
 
 import com.home.you.bookstore.book.Books;
 import com.home.you.bookstore.errors.BookStoreErrorReporter;
+import com.home.you.bookstore.results.ImportResult;
 import com.home.you.bookstore.results.PurchaseResult;
 
 import java.util.List;
@@ -15,7 +16,7 @@ public interface BookStoreClient {
 
     Books getAllBooksFromBasket();
 
-    void addBooksToStore(Books books);
+    ImportResult addBooksToStore(Books books);
 
     void addBooksToBasket(List<Integer> bookIds);
 
@@ -3,6 +3,7 @@ package com.home.you.bookstore.rest.client;
 import com.home.you.bookstore.book.Book;
 import com.home.you.bookstore.book.Books;
 import com.home.you.bookstore.errors.BookStoreErrorReporter;
+import com.home.you.bookstore.results.ImportResult;
 import com.home.you.bookstore.results.PurchaseResult;
 
 import java.util.Collections;
@@ -62,12 +63,14 @@ class BookStoreClientImpl implements BookStoreClient {
 	}
 
 	@Override
-	public void addBooksToStore(Books books) {
+	public ImportResult addBooksToStore(Books books) {
+		ImportResult result = null;
 		try {
-			connection.addBooksToStore(books);
+			result = connection.addBooksToStore(books);
 		} catch (Throwable e) {
 			handler.report("Failed to add books \"" + books + "\" to store", e);
 		}
+		return result;
 	}
 
 	@Override
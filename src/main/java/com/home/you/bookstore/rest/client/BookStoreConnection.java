@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.util.List;
 
 import com.home.you.bookstore.book.Book;
+import com.home.you.bookstore.rest.WireFormat;
+import com.home.you.bookstore.results.ImportResult;
 import com.home.you.bookstore.results.PurchaseResult;
 
 public interface BookStoreConnection {
@@ -15,7 +17,7 @@ public interface BookStoreConnection {
 
 	List<Book> readBasket() throws IOException;
 
-	void addBooksToStore(Iterable<Book> books) throws IOException;
+	ImportResult addBooksToStore(Iterable<Book> books) throws IOException;
 
 	void addBooksToBasket(List<Integer> books) throws IOException;
 
@@ -24,6 +26,32 @@ public interface BookStoreConnection {
 	PurchaseResult buyBasket() throws IOException;
 
 	static BookStoreConnection create(String address, int port) {
-		return new BookStoreConnectionImpl(address, port);
+		return builder()
+				.withAddress(address)
+				.withPort(port)
+				.build();
+	}
+
+	static BookStoreConnection.Builder builder() {
+		return BookStoreConnectionImpl.newBuilder();
+	}
+
+	interface Builder {
+		Builder withAddress(String address);
+
+		Builder withPort(int port);
+
+		/**
+		 * Token sent with every request so the server keeps a basket for this client, a random
+		 * token is used if none is given.
+		 */
+		Builder withSessionToken(String sessionToken);
+
+		/**
+		 * Format of request and response bodies, text if not given.
+		 */
+		Builder withWireFormat(WireFormat format);
+
+		BookStoreConnection build();
 	}
 }
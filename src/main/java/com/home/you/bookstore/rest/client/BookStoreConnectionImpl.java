@@ -3,6 +3,9 @@ package com.home.you.bookstore.rest.client;
 import com.home.you.bookstore.IdParser;
 import com.home.you.bookstore.book.Book;
 import com.home.you.bookstore.book.BookParser;
+import com.home.you.bookstore.rest.WireFormat;
+import com.home.you.bookstore.results.ImportResult;
+import com.home.you.bookstore.results.ImportResultParser;
 import com.home.you.bookstore.results.PurchaseResult;
 import com.home.you.bookstore.results.PurchaseResultParser;
 
@@ -13,6 +16,7 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
+import java.util.UUID;
 
 import static com.home.you.bookstore.BookStoreCli.ADMIN_SERVICE;
 import static com.home.you.bookstore.Constants.WHITESPACE;
@@ -23,14 +27,62 @@ import static com.home.you.bookstore.utils.ReaderUtils.readAll;
 
 class BookStoreConnectionImpl implements BookStoreConnection {
     private static final String APPLICATION = "bookstore";
+    private static final int REQUEST_CHUNK_SIZE = 8192;
     private final String DEFAULT_USER_AGENT_VALUE = "Mozilla/5.0";
 
     private final String address;
     private final int port;
+    private final String sessionToken;
+    private final WireFormat format;
+    private volatile CachedCatalog cachedCatalog;
 
-    BookStoreConnectionImpl(String address, int port) {
-        this.address = address;
-        this.port = port;
+    private BookStoreConnectionImpl(BuilderImpl builder) {
+        this.address = builder.address;
+        this.port = builder.port;
+        this.sessionToken = builder.sessionToken != null ? builder.sessionToken : UUID.randomUUID().toString();
+        this.format = builder.format;
+    }
+
+    static BookStoreConnection.Builder newBuilder() {
+        return new BuilderImpl();
+    }
+
+    private static class BuilderImpl implements BookStoreConnection.Builder {
+        private String address;
+        private int port;
+        private String sessionToken;
+        private WireFormat format = WireFormat.TEXT;
+
+        private BuilderImpl() {}
+
+        @Override
+        public BookStoreConnection.Builder withAddress(String address) {
+            this.address = address;
+            return this;
+        }
+
+        @Override
+        public BookStoreConnection.Builder withPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        @Override
+        public BookStoreConnection.Builder withSessionToken(String sessionToken) {
+            this.sessionToken = sessionToken;
+            return this;
+        }
+
+        @Override
+        public BookStoreConnection.Builder withWireFormat(WireFormat format) {
+            this.format = format;
+            return this;
+        }
+
+        @Override
+        public BookStoreConnection build() {
+            return new BookStoreConnectionImpl(this);
+        }
     }
 
     @Override
@@ -42,11 +94,25 @@ class BookStoreConnectionImpl implements BookStoreConnection {
         return message;
     }
 
+    /**
+     * Revalidates the previously read catalog with the server and only downloads it again if it changed.
+     */
     @Override
     public List<Book> readBooks() throws IOException {
         final URL url = createUrl(BOOK_SERVICE);
-        final InputStream stream = doGet(url);
-        final List<Book> books = BookParser.decode(stream);
+        final CachedCatalog cached = cachedCatalog;
+        final HttpURLConnection connection = openConnection(GET, url);
+        if (cached != null) {
+            connection.setRequestProperty(HTTP_HEADER_IF_NONE_MATCH, cached.etag);
+        }
+        final int responseCode = connection.getResponseCode();
+        if (cached != null && responseCode == HTTP_NOT_MODIFIED) {
+            return cached.books;
+        }
+        final InputStream stream = readBody(connection, url, responseCode);
+        final List<Book> books = decodeBooks(stream);
+        final String etag = connection.getHeaderField(HTTP_HEADER_ETAG);
+        cachedCatalog = etag != null ? new CachedCatalog(etag, books) : null;
         return books;
     }
 
@@ -56,35 +122,49 @@ class BookStoreConnectionImpl implements BookStoreConnection {
         final String searchQuary = "search=" + transformedSearchString;
         final URL url = createUrl(BOOK_SERVICE, searchQuary);
         final InputStream stream = doGet(url);
-        final List<Book> books = BookParser.decode(stream);
+        final List<Book> books = decodeBooks(stream);
         return books;
     }
 
+    /**
+     * Books are encoded straight into the request body, which is sent in chunks.
+     */
     @Override
-    public void addBooksToStore(Iterable<Book> books) throws IOException {
-        final byte[] blob = BookParser.encode(books);
+    public ImportResult addBooksToStore(Iterable<Book> books) throws IOException {
         final URL url = createUrl(BOOK_SERVICE);
-        doPost(url, out -> out.write(blob));
+        final HttpURLConnection connection = openConnection(POST, url);
+        connection.setDoOutput(true);
+        connection.setChunkedStreamingMode(REQUEST_CHUNK_SIZE);
+        connection.setRequestProperty(HTTP_HEADER_CONTENT_TYPE, format.contentType());
+        try (final OutputStream stream = connection.getOutputStream()) {
+            if (format == WireFormat.BINARY) {
+                BookParser.encodeBinary(books, stream);
+            } else {
+                BookParser.encode(books, stream);
+            }
+        }
+        final InputStream stream = readBody(connection, url, connection.getResponseCode());
+        return format == WireFormat.BINARY ? ImportResultParser.decodeBinary(stream) : ImportResultParser.decode(stream);
     }
 
     @Override
     public List<Book> readBasket() throws IOException {
         final URL url = createUrl(BASKET_SERVICE);
         final InputStream stream = doGet(url);
-        final List<Book> books = BookParser.decode(stream);
+        final List<Book> books = decodeBooks(stream);
         return books;
     }
 
     @Override
     public void addBooksToBasket(List<Integer> ids) throws IOException {
-        final byte[] blob = IdParser.encode(ids);
+        final byte[] blob = encodeIds(ids);
         final URL url = createUrl(BASKET_SERVICE);
         doPut(url, out -> out.write(blob));
     }
 
     @Override
     public void removeBooksToBasket(List<Integer> ids) throws IOException {
-        final byte[] blob = IdParser.encode(ids);
+        final byte[] blob = encodeIds(ids);
         final URL url = createUrl(BASKET_SERVICE);
         doDelete(url, out -> out.write(blob));
     }
@@ -93,22 +173,14 @@ class BookStoreConnectionImpl implements BookStoreConnection {
     public PurchaseResult buyBasket() throws IOException {
         final URL url = createUrl(BASKET_SERVICE);
         final InputStream stream = doPost(url, out -> {});
-        final PurchaseResult result = PurchaseResultParser.decode(stream);
+        final PurchaseResult result = format == WireFormat.BINARY ?
+                PurchaseResultParser.decodeBinary(stream) : PurchaseResultParser.decode(stream);
         return result;
     }
 
     private InputStream doGet(URL url) throws IOException {
-        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod(GET);
-        connection.setRequestProperty(HTTP_HEADER_USER_AGENT, DEFAULT_USER_AGENT_VALUE);
-        final int responseCode = connection.getResponseCode();
-        final InputStream body;
-        if (responseCode == 200) {
-            body = connection.getInputStream();
-        } else {
-            throw new ClientException("Failed to send request to url \"" + url + "\". Got HTTP responce code \"" + responseCode + "\"");
-        }
-        return body;
+        final HttpURLConnection connection = openConnection(GET, url);
+        return readBody(connection, url, connection.getResponseCode());
     }
 
     private InputStream doPost(URL url, Task<OutputStream> task) throws IOException {
@@ -124,13 +196,32 @@ class BookStoreConnectionImpl implements BookStoreConnection {
     }
 
     private InputStream doUpdate(String methodType, URL url, Task<OutputStream> task) throws IOException {
-        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod(methodType);
-        connection.setRequestProperty(HTTP_HEADER_USER_AGENT, DEFAULT_USER_AGENT_VALUE);
+        final HttpURLConnection connection = openConnection(methodType, url);
         connection.setDoOutput(true);
+        connection.setRequestProperty(HTTP_HEADER_CONTENT_TYPE, format.contentType());
         final OutputStream stream = connection.getOutputStream();
         task.execute(stream);
-        final int responseCode = connection.getResponseCode();
+        return readBody(connection, url, connection.getResponseCode());
+    }
+
+    private HttpURLConnection openConnection(String methodType, URL url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(methodType);
+        connection.setRequestProperty(HTTP_HEADER_USER_AGENT, DEFAULT_USER_AGENT_VALUE);
+        connection.setRequestProperty(HTTP_HEADER_SESSION_TOKEN, sessionToken);
+        connection.setRequestProperty(HTTP_HEADER_ACCEPT, format.contentType());
+        return connection;
+    }
+
+    private List<Book> decodeBooks(InputStream stream) throws IOException {
+        return format == WireFormat.BINARY ? BookParser.decodeBinary(stream) : BookParser.decode(stream);
+    }
+
+    private byte[] encodeIds(List<Integer> ids) throws IOException {
+        return format == WireFormat.BINARY ? IdParser.encodeBinary(ids) : IdParser.encode(ids);
+    }
+
+    private static InputStream readBody(HttpURLConnection connection, URL url, int responseCode) throws IOException {
         final InputStream body;
         if (responseCode == HTTP_OK) {
             body = connection.getInputStream();
@@ -163,4 +254,14 @@ class BookStoreConnectionImpl implements BookStoreConnection {
         }
         return url;
     }
+
+    private static final class CachedCatalog {
+        private final String etag;
+        private final List<Book> books;
+
+        private CachedCatalog(String etag, List<Book> books) {
+            this.etag = etag;
+            this.books = books;
+        }
+    }
 }
@@ -1,16 +1,34 @@
 package com.home.you.bookstore.rest.server;
 
 import com.home.you.bookstore.basket.Basket;
+import com.home.you.bookstore.basket.BasketStore;
 import com.home.you.bookstore.booklist.BookList;
 import com.home.you.bookstore.errors.BookStoreErrorReporter;
 
 import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 public interface BookStoreServer {
 	void start() throws IOException;
 
 	void stop() throws IOException;
 
+	/**
+	 * The server accepts connections as soon as it is started, but answers book and basket
+	 * requests with 503 until the book list is loaded. The same state is served on
+	 * {@code /bookstore/ready}.
+	 */
+	boolean isReady();
+
+	/**
+	 * @return true once the book list is loaded, false if loading failed or took longer than the
+	 *         given time
+	 */
+	boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException;
+
 	static BookStoreServer.Builder builder() {
 		return BookStoreServerImpl.newBuilder();
 	}
@@ -20,10 +38,71 @@ public interface BookStoreServer {
 
 		Builder withBookList(BookList bookList);
 
+		/**
+		 * All clients share the given basket.
+		 */
 		Builder withBasket(Basket basket);
 
+		/**
+		 * Clients get the basket of their session token from the given store.
+		 */
+		Builder withBasketStore(BasketStore basketStore);
+
+		/**
+		 * Baskets not used for the given time are removed from the basket store.
+		 */
+		Builder withBasketIdleTimeout(long timeout, TimeUnit unit);
+
 		Builder withBookStoreErrorReporter(BookStoreErrorReporter reporter);
 
+		/**
+		 * Books loaded in the background after start, the default is the public bookstore feed.
+		 */
+		Builder withSeedSource(SeedSource seedSource);
+
+		/**
+		 * Once the book list is loaded, checks the feed at the given interval and adds new books and
+		 * raised quantities to the book list. The feed is only downloaded when it has changed.
+		 */
+		Builder withCatalogSync(URL feed, long interval, TimeUnit unit);
+
+		/**
+		 * Handles requests on a pool of worker threads. When all workers are busy and the queue is
+		 * full the request is handled on the accepting thread, which slows down new connections.
+		 */
+		Builder withWorkerPool(int threads, int queueLimit);
+
+		/**
+		 * Handles requests on the given executor, the caller owns it and is responsible for shutting
+		 * it down.
+		 */
+		Builder withExecutor(Executor executor);
+
+		/**
+		 * Estimated heap the cached search results may take, 0 disables the cache.
+		 */
+		Builder withSearchCacheBytes(long bytes);
+
+		/**
+		 * Checkouts of a journaled book list wait in a queue of the given size and are bought in
+		 * batches of at most the given number of orders, a full queue makes the request buy its order
+		 * itself. Without a journal every checkout is bought directly.
+		 */
+		Builder withCheckoutBatching(int queueLimit, int maxBatchSize);
+
+		/**
+		 * Records every change of the book list in a write-ahead log in the given directory. On start
+		 * the log is replayed into the book list, which should be empty, and the seed data is only
+		 * loaded when the log was empty.
+		 */
+		Builder withJournal(Path directory);
+
+		/**
+		 * Writes a snapshot of the journal at the given interval, which shortens the replay on start
+		 * and removes the log it covers. Only used together with {@link #withJournal(Path)}.
+		 */
+		Builder withSnapshotInterval(long interval, TimeUnit unit);
+
 		BookStoreServer build();
 	}
 }
@@ -2,14 +2,21 @@ package com.home.you.bookstore.rest.server;
 
 import com.home.you.bookstore.book.Book;
 import com.home.you.bookstore.basket.Basket;
+import com.home.you.bookstore.basket.BasketStore;
 import com.home.you.bookstore.booklist.BookList;
+import com.home.you.bookstore.booklist.JournaledBookList;
 import com.home.you.bookstore.errors.BookStoreErrorReporter;
 import com.home.you.bookstore.book.BookParser;
 import com.home.you.bookstore.IdParser;
+import com.home.you.bookstore.rest.WireFormat;
+import com.home.you.bookstore.results.ImportResult;
+import com.home.you.bookstore.results.ImportResultParser;
 import com.home.you.bookstore.results.PurchaseResult;
 import com.home.you.bookstore.results.PurchaseResultParser;
 import com.home.you.bookstore.results.Status;
 import com.home.you.bookstore.results.Statuses;
+import com.home.you.bookstore.utils.Money;
+import com.sun.net.httpserver.Filter;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
@@ -18,63 +25,172 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
 import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import static com.home.you.bookstore.Constants.*;
 import static com.home.you.bookstore.rest.RestConstants.*;
 import static com.home.you.bookstore.utils.ArgumentUtils.extractIntegerOrDefault;
+import static com.home.you.bookstore.utils.ArgumentUtils.extractStringOrDefault;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
-import static java.util.logging.Level.SEVERE;
+import static java.util.concurrent.TimeUnit.MINUTES;
 
 class BookStoreServerImpl implements BookStoreServer {
 	private static final Logger LOG = Logger.getLogger(BookStoreServerImpl.class.getName());
 	
     private static final String ADDRESS = "https://raw.githubusercontent.com/contribe/contribe/dev/bookstoredata/bookstoredata.txt";
     private static final int DEFAULT_BACKLOG = -1;
+    private static final int IMPORT_BATCH_SIZE = 1024;
+    private static final String BINARY_ETAG_SUFFIX = "-bin";
     private static final String DEFAULT_APPLICATION_CONTEXT = "bookstore";
     private static final int SIZE_OF_EQUAL_SIGN = 1;
     private static final String PARAMETER_DELIMIT = "&";
     private static final int NO_DELAY = 0;
     private static final int SHORT_DELAY = 1000;
     private static final long NO_DATA = 0;
+    private static final long CHUNKED = 0;
+    private static final long NO_BODY = -1;
     private static final String DO_NOT_SUPPORT = "Do not support \"";
     private static final String ERROR_ON_SERVER = "Error occur on server side";
+    private static final String HEAP_BOOK_LIST = "heap";
+    private static final String OFF_HEAP_BOOK_LIST = "offheap";
 
     static final int DEFAULT_PORT = 8080;
+    static final int DEFAULT_WORKER_QUEUE_LIMIT = 1024;
+    static final long DEFAULT_BASKET_IDLE_TIMEOUT_MINUTES = 30;
+    static final long DEFAULT_SEARCH_CACHE_BYTES = 16L << 20;
+    // A single search result takes at most this fraction of the search cache
+    static final int SEARCH_CACHE_ENTRY_SHARE = 8;
+    static final int DEFAULT_CHECKOUT_QUEUE_LIMIT = 1024;
+    static final int DEFAULT_CHECKOUT_BATCH_SIZE = 64;
+    static final long CHECKOUT_TIMEOUT_SECONDS = 5;
+    // Threads still writing to the journal on stop get this long to finish, they are not interrupted
+    static final long STOP_TIMEOUT_SECONDS = 30;
     
 
     private final BookList bookList;
-    private final Basket basket;
+    private final JournaledBookList journal;
+    private final long snapshotIntervalMillis;
+    private final BasketStore basketStore;
+    private final long basketIdleTimeoutMillis;
     private final int port;
     private final HttpServer httpServer;
     private final BookStoreErrorReporter reporter;
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+    private final ScheduledExecutorService executor = createScheduler();
+    private final Executor requestExecutor;
+    private final ExecutorService ownedRequestExecutor;
+    // Distinguishes entity tags of different server runs, the catalog version starts over on restart
+    private final String instanceTag = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private volatile CatalogSnapshot catalogSnapshot;
+    private final SearchCache searchCache;
+    private final CheckoutPipeline checkoutPipeline;
+    private final SeedSource seedSource;
+    private final CatalogSync catalogSync;
+    private final long catalogSyncIntervalMillis;
+    // A slow feed only delays the next sync, not the jobs on the executor
+    private final ScheduledExecutorService catalogSyncExecutor;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
 
     private BookStoreServerImpl(BuilderImpl builder) {
         this.port = builder.port;
-        this.bookList = builder.bookList;
-        this.basket = builder.basket;
+        this.journal = builder.journalDirectory != null ?
+                JournaledBookList.create(builder.bookList, builder.journalDirectory) :
+                null;
+        this.bookList = journal != null ? journal : builder.bookList;
+        this.snapshotIntervalMillis = builder.snapshotIntervalMillis;
+        this.seedSource = builder.seedSource;
+        this.catalogSync = builder.catalogFeed != null ? new CatalogSync(bookList, builder.catalogFeed) : null;
+        this.catalogSyncIntervalMillis = builder.catalogSyncIntervalMillis;
+        this.catalogSyncExecutor = catalogSync != null ? createScheduler() : null;
+        this.basketStore = builder.basketStore;
+        this.basketIdleTimeoutMillis = builder.basketIdleTimeoutMillis;
         this.reporter = builder.reporter;
+        this.ownedRequestExecutor = builder.workerThreads > 0 ?
+                createWorkerPool(builder.workerThreads, builder.workerQueueLimit) :
+                null;
+        this.requestExecutor = ownedRequestExecutor != null ? ownedRequestExecutor : builder.requestExecutor;
+        this.searchCache = new SearchCache(builder.searchCacheBytes, builder.searchCacheBytes / SEARCH_CACHE_ENTRY_SHARE);
+        // Stock is reserved with compare and set, without a journal to write batching would only
+        // serialize checkouts on the applier thread
+        this.checkoutPipeline = journal != null ?
+                new CheckoutPipeline(bookList, builder.checkoutQueueLimit, builder.checkoutBatchSize) :
+                null;
         this.httpServer = createHttpServerQuietly();
     }
 
     @Override
     public void start() throws IOException {
+        if (checkoutPipeline != null) {
+            checkoutPipeline.start();
+        }
         startHttpServer();
-        loadBookDataFromAddress();
+        scheduleBasketEviction();
+        executor.execute(this::warmUp);
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+
+    @Override
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            ready.get(timeout, unit);
+            return true;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
     }
 
     @Override
     public void stop() throws IOException {
         httpServer.stop(NO_DELAY);
-        executor.shutdownNow();
+        // An interrupt while writing the journal closes its file and loses what was not synced yet
+        awaitStopped(executor, "Scheduler");
+        if (catalogSyncExecutor != null) {
+            awaitStopped(catalogSyncExecutor, "Catalog sync");
+        }
+        if (ownedRequestExecutor != null) {
+            awaitStopped(ownedRequestExecutor, "Request workers");
+        }
+        if (checkoutPipeline != null) {
+            checkoutPipeline.stop();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private void awaitStopped(ExecutorService service, String name) {
+        service.shutdown();
+        try {
+            if (!service.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                reporter.report(name + " did not stop within " + STOP_TIMEOUT_SECONDS + " seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     static Builder newBuilder() {
@@ -83,9 +199,21 @@ class BookStoreServerImpl implements BookStoreServer {
 
     private static class BuilderImpl implements BookStoreServer.Builder {
         private BookList bookList = BookList.create();
-        private Basket basket = Basket.create();
+        private BasketStore basketStore = BasketStore.create();
+        private long basketIdleTimeoutMillis = MINUTES.toMillis(DEFAULT_BASKET_IDLE_TIMEOUT_MINUTES);
         private int port = DEFAULT_PORT;
         private BookStoreErrorReporter reporter = BookStoreErrorReporter.none();
+        private Executor requestExecutor;
+        private int workerThreads;
+        private int workerQueueLimit;
+        private long searchCacheBytes = DEFAULT_SEARCH_CACHE_BYTES;
+        private int checkoutQueueLimit = DEFAULT_CHECKOUT_QUEUE_LIMIT;
+        private int checkoutBatchSize = DEFAULT_CHECKOUT_BATCH_SIZE;
+        private Path journalDirectory;
+        private long snapshotIntervalMillis;
+        private SeedSource seedSource = defaultSeedSource();
+        private URL catalogFeed;
+        private long catalogSyncIntervalMillis;
 
         private BuilderImpl() {
         }
@@ -104,7 +232,19 @@ class BookStoreServerImpl implements BookStoreServer {
 
         @Override
         public Builder withBasket(Basket basket) {
-            this.basket = basket;
+            this.basketStore = BasketStore.shared(basket);
+            return this;
+        }
+
+        @Override
+        public Builder withBasketStore(BasketStore basketStore) {
+            this.basketStore = basketStore;
+            return this;
+        }
+
+        @Override
+        public Builder withBasketIdleTimeout(long timeout, TimeUnit unit) {
+            this.basketIdleTimeoutMillis = unit.toMillis(timeout);
             return this;
         }
 
@@ -114,6 +254,68 @@ class BookStoreServerImpl implements BookStoreServer {
             return this;
         }
 
+        @Override
+        public Builder withWorkerPool(int threads, int queueLimit) {
+            if (threads <= 0 || queueLimit <= 0) {
+                throw new IllegalArgumentException("Worker threads and queue limit must be positive");
+            }
+            this.workerThreads = threads;
+            this.workerQueueLimit = queueLimit;
+            this.requestExecutor = null;
+            return this;
+        }
+
+        @Override
+        public Builder withExecutor(Executor executor) {
+            this.requestExecutor = executor;
+            this.workerThreads = 0;
+            return this;
+        }
+
+        @Override
+        public Builder withSearchCacheBytes(long bytes) {
+            this.searchCacheBytes = bytes;
+            return this;
+        }
+
+        @Override
+        public Builder withCheckoutBatching(int queueLimit, int maxBatchSize) {
+            if (queueLimit <= 0 || maxBatchSize <= 0) {
+                throw new IllegalArgumentException("Checkout queue limit and batch size must be positive");
+            }
+            this.checkoutQueueLimit = queueLimit;
+            this.checkoutBatchSize = maxBatchSize;
+            return this;
+        }
+
+        @Override
+        public Builder withSeedSource(SeedSource seedSource) {
+            this.seedSource = seedSource;
+            return this;
+        }
+
+        @Override
+        public Builder withCatalogSync(URL feed, long interval, TimeUnit unit) {
+            if (interval <= 0) {
+                throw new IllegalArgumentException("Catalog sync interval must be positive");
+            }
+            this.catalogFeed = feed;
+            this.catalogSyncIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        @Override
+        public Builder withJournal(Path directory) {
+            this.journalDirectory = directory;
+            return this;
+        }
+
+        @Override
+        public Builder withSnapshotInterval(long interval, TimeUnit unit) {
+            this.snapshotIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
         @Override
         public BookStoreServer build() {
             return new BookStoreServerImpl(this);
@@ -124,28 +326,141 @@ class BookStoreServerImpl implements BookStoreServer {
         httpServer.bind(new InetSocketAddress(port), DEFAULT_BACKLOG);
         final String basketServletContextUrl = constructServletContext(DEFAULT_APPLICATION_CONTEXT,
                 BasketServlet.CONTEXT);
-        httpServer.createContext(basketServletContextUrl, new BasketServlet());
+        httpServer.createContext(basketServletContextUrl, new BasketServlet()).getFilters().add(new ReadinessFilter());
         final String bookServletContextUrl = constructServletContext(DEFAULT_APPLICATION_CONTEXT, BookServlet.CONTEXT);
-        httpServer.createContext(bookServletContextUrl, new BookServlet());
+        httpServer.createContext(bookServletContextUrl, new BookServlet()).getFilters().add(new ReadinessFilter());
+        final String readyServletContextUrl = constructServletContext(DEFAULT_APPLICATION_CONTEXT, ReadyServlet.CONTEXT);
+        httpServer.createContext(readyServletContextUrl, new ReadyServlet());
         final String adminServletContextUrl = constructServletContext(DEFAULT_APPLICATION_CONTEXT, AdminServlet.CONTEXT);
         httpServer.createContext(adminServletContextUrl, new AdminServlet());
+        if (requestExecutor != null) {
+            httpServer.setExecutor(requestExecutor);
+        }
         httpServer.start();
     }
 
-    private void loadBookDataFromAddress() {
-    	try {
-            final URL dataUrl = new URL(ADDRESS);
-            final InputStream stream = dataUrl.openStream();
-            final List<Book> books = BookParser.decode(stream);
-            addBooksToList(books);
-        } catch (IOException e) {
-            throw new IllegalStateException("Unable to read data from address \"" + ADDRESS + "\"", e);
+    private void scheduleBasketEviction() {
+        final long period = Math.max(basketIdleTimeoutMillis / 2, 1);
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                basketStore.evictIdle(basketIdleTimeoutMillis, MILLISECONDS);
+            } catch (RuntimeException e) {
+                reporter.report("Failed to evict idle baskets", e);
+            }
+        }, period, period, MILLISECONDS);
+    }
+
+    private long recoverJournal() throws IOException {
+        if (journal == null) {
+            return 0;
+        }
+        final long start = System.nanoTime();
+        final long recovered = journal.recover();
+        LOG.info("Recovered " + recovered + " books and journal records in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        return recovered;
+    }
+
+    private void scheduleSnapshots() {
+        if (journal == null || snapshotIntervalMillis <= 0) {
+            return;
+        }
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                final int books = journal.snapshot();
+                LOG.info("Wrote snapshot of " + books + " books");
+            } catch (IOException | RuntimeException e) {
+                reporter.report("Failed to write snapshot", e);
+            }
+        }, snapshotIntervalMillis, snapshotIntervalMillis, MILLISECONDS);
+    }
+
+    private void warmUp() {
+        try {
+            final long recovered = recoverJournal();
+            scheduleSnapshots();
+            if (recovered > 0) {
+                LOG.info("Recovered the book list from the journal, not loading the seed data");
+            } else {
+                loadSeedData();
+            }
+            ready.complete(null);
+            scheduleCatalogSync();
+        } catch (IOException | RuntimeException e) {
+            reporter.report("Unable to load the book list from " + seedSource, e);
+            ready.completeExceptionally(e);
+        }
+    }
+
+    private void scheduleCatalogSync() {
+        if (catalogSync == null) {
+            return;
+        }
+        catalogSyncExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                final ImportResult result = catalogSync.sync();
+                if (result.getInserted() > 0 || result.getMerged() > 0 || result.getRejected() > 0) {
+                    LOG.info("Synced catalog, " + result.getInserted() + " new books, " + result.getMerged()
+                            + " restocked, " + result.getRejected() + " rejected rows");
+                }
+            } catch (IOException | RuntimeException e) {
+                reporter.report("Failed to sync the catalog", e);
+            }
+        }, catalogSyncIntervalMillis, catalogSyncIntervalMillis, MILLISECONDS);
+    }
+
+    private void loadSeedData() throws IOException {
+        final long start = System.nanoTime();
+        try (InputStream stream = seedSource.open()) {
+            final List<Book> books = BookParser.decodeParallel(stream);
+            final int inserted = bookList.addAll(books);
+            LOG.info("Loaded " + books.size() + " books from " + seedSource + ", " + inserted + " new to the list, in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+    }
+
+    /**
+     * Answers 503 until the book list is loaded.
+     */
+    private class ReadinessFilter extends Filter {
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            if (isReady()) {
+                chain.doFilter(exchange);
+            } else {
+                exchange.sendResponseHeaders(HTTP_SERVICE_UNAVAILABLE, NO_BODY);
+                exchange.close();
+            }
+        }
+
+        @Override
+        public String description() {
+            return "Rejects requests until the book list is loaded";
+        }
+    }
+
+    private class ReadyServlet implements HttpHandler {
+        static final String CONTEXT = "ready";
+        private static final String READY = "ready";
+        private static final String LOADING = "loading";
+        private static final String FAILED = "failed";
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            final String state = isReady() ? READY : ready.isDone() ? FAILED : LOADING;
+            final byte[] data = (state + NEW_LINE).getBytes(UTF8);
+            exchange.sendResponseHeaders(isReady() ? HTTP_OK : HTTP_SERVICE_UNAVAILABLE, data.length);
+            exchange.getResponseBody().write(data);
+            exchange.close();
         }
     }
 
     private class AdminServlet implements HttpHandler {
         static final String CONTEXT = "admin";
         private static final String COMMAND_PARAMETER = "command";
+        private static final String QUIT_COMMAND = "quit";
+        private static final String STATS_COMMAND = "stats";
+        private static final String SWAP_COMMAND = "swap";
 
         @Override
 		public void handle(HttpExchange exchange) throws IOException {
@@ -153,10 +468,18 @@ class BookStoreServerImpl implements BookStoreServer {
 				if (POST.equals(exchange.getRequestMethod())) {
 					final String query = exchange.getRequestURI().getQuery();
 					final String command = query != null ? extractParameter(query, COMMAND_PARAMETER) : null;
-					if ("quit".equalsIgnoreCase(command)) {
-						executor.schedule(() -> {stopServer();}, SHORT_DELAY, MILLISECONDS);
+					if (QUIT_COMMAND.equalsIgnoreCase(command)) {
+						// Stopping waits for the scheduler, so it can not run on it
+						executor.schedule(() -> new Thread(this::stopServer, "bookstore-stop").start(), SHORT_DELAY, MILLISECONDS);
+						sendResponce(exchange);
+					} else if (STATS_COMMAND.equalsIgnoreCase(command)) {
+						final String stats = "searchCache: " + searchCache.stats() + NEW_LINE;
+						sendResponce(exchange, stats.getBytes(UTF8));
+					} else if (SWAP_COMMAND.equalsIgnoreCase(command)) {
+						swapCatalog(exchange);
+					} else {
+						sendResponce(exchange);
 					}
-					sendResponce(exchange);
 				} else {
 					throw new IllegalStateException(DO_NOT_SUPPORT + exchange.getRequestMethod() + "\"");
 				}
@@ -166,6 +489,24 @@ class BookStoreServerImpl implements BookStoreServer {
 			}
 		}
 
+		/**
+		 * Replaces the catalog with the books of the request body.
+		 */
+		private void swapCatalog(HttpExchange exchange) throws IOException {
+			final List<Book> books = new ArrayList<>();
+			int rejected = 0;
+			try (InputStream stream = exchange.getRequestBody()) {
+				if (requestFormat(exchange) == WireFormat.BINARY) {
+					BookParser.decodeBinary(stream, books::add);
+				} else {
+					rejected = BookParser.decode(stream, books::add);
+				}
+			}
+			final int kept = bookList.prepareReplacement(books).publish();
+			LOG.info("Swapped in a catalog of " + books.size() + " books, " + kept + " kept their stock");
+			sendResponce(exchange, ImportResult.of(books.size() - kept, kept, rejected));
+		}
+
 		private void stopServer() {
 			try {
 				stop();
@@ -198,20 +539,59 @@ class BookStoreServerImpl implements BookStoreServer {
             }
         }
 
+        /**
+         * Books are added in batches while the body is read, so an import of any size uses a bounded
+         * amount of memory. Responds with a summary of the import.
+         */
         private void doPost(HttpExchange exchange) throws IOException {
             final InputStream stream = exchange.getRequestBody();
-            final List<Book> result = BookParser.decode(stream);
-            addBooksToList(result);
-            final byte[] data = BookParser.encode(result);
-            sendResponce(exchange, data);
+            final BatchImporter importer = new BatchImporter();
+            int rejected = 0;
+            if (requestFormat(exchange) == WireFormat.BINARY) {
+                BookParser.decodeBinary(stream, importer);
+            } else {
+                rejected = BookParser.decode(stream, importer);
+            }
+            importer.flush();
+            sendResponce(exchange, ImportResult.of(importer.inserted, importer.merged, rejected));
         }
 
         private void doGet(HttpExchange exchange) throws IOException {
             final String query = exchange.getRequestURI().getQuery();
             final String searchingString = query != null ? extractParameter(query, SEARCH_PARAMETER) : null;
-            final List<Book> result = Arrays.asList(bookList.list(searchingString));
-            final byte[] data = BookParser.encode(result);
-            sendResponce(exchange, data);
+            // The body is text or binary depending on the Accept header, caches must keep them apart
+            exchange.getResponseHeaders().set(HTTP_HEADER_VARY, HTTP_HEADER_ACCEPT);
+            if (searchingString == null || searchingString.isEmpty()) {
+                sendCatalog(exchange);
+            } else {
+                sendSearchResult(exchange, searchingString);
+            }
+        }
+
+        private void sendSearchResult(HttpExchange exchange, String searchingString) throws IOException {
+            final String key = searchingString.toLowerCase();
+            // Read before searching, a result cached under an older version is only ever missed
+            final long catalogVersion = bookList.catalogVersion();
+            Book[] result = searchCache.get(key, catalogVersion);
+            if (result == null) {
+                result = bookList.list(searchingString);
+                searchCache.put(key, catalogVersion, result);
+            }
+            // Encoded for every request, the stock of the books found changes with every sale
+            sendResponce(exchange, responseFormat(exchange), Arrays.asList(result));
+        }
+
+        private void sendCatalog(HttpExchange exchange) throws IOException {
+            final CatalogSnapshot snapshot = currentCatalogSnapshot();
+            final WireFormat format = responseFormat(exchange);
+            final String etag = snapshot.etag(format);
+            exchange.getResponseHeaders().set(HTTP_HEADER_ETAG, etag);
+            if (matches(etag, exchange.getRequestHeaders().getFirst(HTTP_HEADER_IF_NONE_MATCH))) {
+                exchange.sendResponseHeaders(HTTP_NOT_MODIFIED, NO_BODY);
+                exchange.close();
+            } else {
+                sendResponce(exchange, format, snapshot.data(format));
+            }
         }
     }
 
@@ -221,18 +601,19 @@ class BookStoreServerImpl implements BookStoreServer {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             try {
+                final Basket basket = basketStore.get(exchange.getRequestHeaders().getFirst(HTTP_HEADER_SESSION_TOKEN));
                 switch (exchange.getRequestMethod()) {
                     case POST:
-                        doPost(exchange);
+                        doPost(exchange, basket);
                         break;
                     case GET:
-                        doGet(exchange);
+                        doGet(exchange, basket);
                         break;
                     case DELETE:
-                        doDelete(exchange);
+                        doDelete(exchange, basket);
                         break;
                     case PUT:
-                        doPut(exchange);
+                        doPut(exchange, basket);
                         break;
                     default:
                         throw new IllegalStateException(DO_NOT_SUPPORT + exchange.getRequestMethod() + "\"");
@@ -243,9 +624,30 @@ class BookStoreServerImpl implements BookStoreServer {
             }
         }
 
-        private void doPost(HttpExchange exchange) throws IOException {
-            final List<Book> books = basket.getBooks();
-            final int[] statusCodes = bookList.buy(books.toArray(new Book[0]));
+        /**
+         * The basket is emptied while its books are bought, so concurrent checkouts of the same
+         * basket do not buy them twice. It gets them back if the order was cancelled or timed out
+         * before it was bought. After a failure it is not known whether the books were bought, and
+         * the basket stays empty.
+         */
+        private void doPost(HttpExchange exchange, Basket basket) throws IOException {
+            final List<Book> books;
+            synchronized (basket) {
+                books = basket.getBooks();
+                basket.clear();
+            }
+            final int[] statusCodes;
+            try {
+                statusCodes = checkout(books.toArray(new Book[0]));
+            } catch (TimeoutException e) {
+                restore(basket, books);
+                exchange.sendResponseHeaders(HTTP_SERVICE_UNAVAILABLE, NO_BODY);
+                exchange.close();
+                return;
+            }
+            if (!isAnyBought(statusCodes)) {
+                restore(basket, books);
+            }
             final List<Status> statusList = Status.asList(statusCodes);
             final BigDecimal totalPrice = calculateTotalPrice(books, statusCodes);
             final Statuses statuses = Statuses.of(statusList);
@@ -253,61 +655,158 @@ class BookStoreServerImpl implements BookStoreServer {
                     .withTotalPrice(totalPrice)
                     .withStatuses(statuses)
                     .build();
-            final byte[] data = PurchaseResultParser.encode(result);
-            sendResponce(exchange, data);
-            basket.clear();
+            final WireFormat format = responseFormat(exchange);
+            final byte[] data = format == WireFormat.BINARY ?
+                    PurchaseResultParser.encodeBinary(result) : PurchaseResultParser.encode(result);
+            sendResponce(exchange, format, data);
         }
 
-        private void doGet(HttpExchange exchange) throws IOException {
+        private boolean isAnyBought(int[] statusCodes) {
+            for (int statusCode : statusCodes) {
+                if (statusCode == Status.OK.value()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void restore(Basket basket, List<Book> books) {
+            synchronized (basket) {
+                basket.add(books);
+            }
+        }
+
+        private void doGet(HttpExchange exchange, Basket basket) throws IOException {
             final List<Book> books = basket.getBooks();
-            final byte[] data = BookParser.encode(books);
-            sendResponce(exchange, data);
+            sendResponce(exchange, responseFormat(exchange), books);
         }
 
-        private void doDelete(HttpExchange exchange) throws IOException {
-            final List<Book> books = findBooksFromBookList(exchange);
-            basket.remove(books);
+        private void doDelete(HttpExchange exchange, Basket basket) throws IOException {
+            basket.remove(readIds(exchange));
             sendResponce(exchange);
         }
 
-        private void doPut(HttpExchange exchange) throws IOException {
+        private void doPut(HttpExchange exchange, Basket basket) throws IOException {
             final List<Book> books = findBooksFromBookList(exchange);
             basket.add(books);
             sendResponce(exchange);
         }
         
         private BigDecimal calculateTotalPrice(List<Book> books, int[] statusCodes) {
-        	double price = 0.0;
+        	long totalCents = 0;
         	for (int i = 0; i < books.size(); i++) {
-        		final Book book = books.get(i);
-        		if(statusCodes[i] == 0) {
-        			price += book.getPrice().doubleValue();
+        		if (statusCodes[i] == Status.OK.value()) {
+        			totalCents = Math.addExact(totalCents, books.get(i).getPriceCents());
         		}
         	}
-        	return BigDecimal.valueOf(price);
+        	return Money.toBigDecimal(totalCents);
         }
         
         private List<Book> findBooksFromBookList(HttpExchange exchange) throws IOException {
+        	return Arrays.asList(bookList.findByIds(readIds(exchange)));
+        }
+
+        private int[] readIds(HttpExchange exchange) throws IOException {
         	final InputStream stream = exchange.getRequestBody();
-        	final List<Integer> ids = IdParser.decode(stream);
-        	final List<Book> books = findAllBooksByIds(ids);
-        	return books;
+        	return requestFormat(exchange) == WireFormat.BINARY ?
+        			IdParser.decodeIdsBinary(stream) : IdParser.decodeIds(stream);
         }
+    }
 
-        private List<Book> findAllBooksByIds(List<Integer> ids) {
-            final List<Book> books = new ArrayList<>();
-            ids.forEach(id -> {
-                final Optional<Book> bookOpt = bookList.find(b -> id.equals(b.getId()));
-                bookOpt.ifPresent(books::add);
-            });
-            return books;
+    /**
+     * Buys all books or none of them, through the checkout pipeline when the list is journaled.
+     *
+     * @throws TimeoutException if the order waited too long in the pipeline, it is not bought then
+     */
+    private int[] checkout(Book[] books) throws TimeoutException {
+        return checkoutPipeline != null ?
+                checkoutPipeline.checkout(CHECKOUT_TIMEOUT_SECONDS, TimeUnit.SECONDS, books) :
+                bookList.buyAll(books);
+    }
+
+    /**
+     * Encoded catalog of the current book list version, encoded again only after the list changed.
+     */
+    private CatalogSnapshot currentCatalogSnapshot() throws IOException {
+        CatalogSnapshot snapshot = catalogSnapshot;
+        if (snapshot == null || snapshot.version != bookList.version()) {
+            synchronized (this) {
+                snapshot = catalogSnapshot;
+                final long version = bookList.version();
+                if (snapshot == null || snapshot.version != version) {
+                    final List<Book> books = Arrays.asList(bookList.list(null));
+                    snapshot = new CatalogSnapshot(version, instanceTag, books, BookParser.encode(books));
+                    catalogSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * The binary form of the catalog is only encoded once a client asks for it.
+     */
+    private static final class CatalogSnapshot {
+        private final long version;
+        private final String etag;
+        private final List<Book> books;
+        private final byte[] data;
+        private volatile byte[] binaryData;
+
+        private CatalogSnapshot(long version, String instanceTag, List<Book> books, byte[] data) {
+            this.version = version;
+            this.etag = instanceTag + '-' + version;
+            this.books = books;
+            this.data = data;
+        }
+
+        private String etag(WireFormat format) {
+            return DOUBLE_QUOTE + etag + (format == WireFormat.BINARY ? BINARY_ETAG_SUFFIX : EMPTY_STRING) + DOUBLE_QUOTE;
+        }
+
+        private byte[] data(WireFormat format) throws IOException {
+            if (format == WireFormat.TEXT) {
+                return data;
+            }
+            byte[] result = binaryData;
+            if (result == null) {
+                result = BookParser.encodeBinary(books);
+                binaryData = result;
+            }
+            return result;
+        }
+    }
+
+    private static boolean matches(String etag, String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(COMMA)) {
+                if (etag.equals(tag.trim())) {
+                    return true;
+                }
+            }
         }
+        return false;
     }
 
-    private void addBooksToList(List<Book> books) {
-        for (Book book : books) {
-            if (!bookList.add(book, book.getQuantity())) {
-            	LOG.log(SEVERE, "Failed to add " + book + " to list");
+    private class BatchImporter implements Consumer<Book> {
+        private final List<Book> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        private int inserted;
+        private int merged;
+
+        @Override
+        public void accept(Book book) {
+            batch.add(book);
+            if (batch.size() == IMPORT_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (!batch.isEmpty()) {
+                final int added = bookList.addAll(batch);
+                inserted += added;
+                merged += batch.size() - added;
+                batch.clear();
             }
         }
     }
@@ -317,6 +816,37 @@ class BookStoreServerImpl implements BookStoreServer {
         exchange.close();
     }
 
+    private static void sendResponce(HttpExchange exchange, ImportResult result) throws IOException {
+        final WireFormat format = responseFormat(exchange);
+        final byte[] data = format == WireFormat.BINARY ?
+                ImportResultParser.encodeBinary(result) : ImportResultParser.encode(result);
+        sendResponce(exchange, format, data);
+    }
+
+    private static WireFormat requestFormat(HttpExchange exchange) {
+        return WireFormat.of(exchange.getRequestHeaders().getFirst(HTTP_HEADER_CONTENT_TYPE));
+    }
+
+    private static WireFormat responseFormat(HttpExchange exchange) {
+        return WireFormat.of(exchange.getRequestHeaders().getFirst(HTTP_HEADER_ACCEPT));
+    }
+
+    private static void sendResponce(HttpExchange exchange, WireFormat format, Iterable<Book> books) throws IOException {
+        exchange.getResponseHeaders().set(HTTP_HEADER_CONTENT_TYPE, format.contentType());
+        exchange.sendResponseHeaders(HTTP_OK, CHUNKED);
+        if (format == WireFormat.BINARY) {
+            BookParser.encodeBinary(books, exchange.getResponseBody());
+        } else {
+            BookParser.encode(books, exchange.getResponseBody());
+        }
+        exchange.close();
+    }
+
+    private static void sendResponce(HttpExchange exchange, WireFormat format, byte[] data) throws IOException {
+        exchange.getResponseHeaders().set(HTTP_HEADER_CONTENT_TYPE, format.contentType());
+        sendResponce(exchange, data);
+    }
+
     private static void sendResponce(HttpExchange exchange, final byte[] data) throws IOException {
         exchange.sendResponseHeaders(HTTP_OK, data.length);
         exchange.getResponseBody().write(data);
@@ -325,12 +855,54 @@ class BookStoreServerImpl implements BookStoreServer {
 
     public static void main(String[] args) throws IOException, InterruptedException {
         final int port = extractIntegerOrDefault(args, FIRST, DEFAULT_PORT);
-        final BookStoreServer server = BookStoreServer.builder()
+        final String seedFile = extractStringOrDefault(args, SECOND, null);
+        final String bookListKind = extractStringOrDefault(args, THIRD, HEAP_BOOK_LIST);
+        final BookStoreServer.Builder builder = BookStoreServer.builder();
+        if (seedFile != null) {
+            builder.withSeedSource(SeedSource.file(Paths.get(seedFile)));
+        }
+        if (OFF_HEAP_BOOK_LIST.equalsIgnoreCase(bookListKind)) {
+            builder.withBookList(BookList.createOffHeap());
+        } else if (!HEAP_BOOK_LIST.equalsIgnoreCase(bookListKind)) {
+            throw new IllegalArgumentException("Unknown book list \"" + bookListKind + "\", expected \""
+                    + HEAP_BOOK_LIST + "\" or \"" + OFF_HEAP_BOOK_LIST + "\"");
+        }
+        final BookStoreServer server = builder
                 .withPort(port)
+                .withWorkerPool(Runtime.getRuntime().availableProcessors(), DEFAULT_WORKER_QUEUE_LIMIT)
                 .build();
         server.start();
     }
 
+    /**
+     * Single thread scheduler that drops its periodic and delayed jobs on shutdown and finishes the
+     * running one.
+     */
+    private static ScheduledExecutorService createScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return scheduler;
+    }
+
+    private static ExecutorService createWorkerPool(int threads, int queueLimit) {
+        final AtomicInteger threadCounter = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, "bookstore-worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(threads, threads, 0L, MILLISECONDS, new ArrayBlockingQueue<>(queueLimit),
+                threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static SeedSource defaultSeedSource() {
+        try {
+            return SeedSource.url(new URL(ADDRESS));
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Invalid seed address \"" + ADDRESS + "\"", e);
+        }
+    }
+
     private static HttpServer createHttpServerQuietly() {
         final HttpServer server;
         try {
@@ -0,0 +1,159 @@
+package com.home.you.bookstore.rest.server;
+
+import com.home.you.bookstore.book.Book;
+import com.home.you.bookstore.book.BookKey;
+import com.home.you.bookstore.book.BookParser;
+import com.home.you.bookstore.booklist.BookList;
+import com.home.you.bookstore.results.ImportResult;
+import com.home.you.bookstore.utils.IdGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.home.you.bookstore.rest.RestConstants.*;
+
+/**
+ * Keeps the book list up to date with an upstream feed. The feed is only downloaded when it has
+ * changed since the last sync, and its rows are compared as they are read with the quantities of
+ * the previous sync, so only new books and raised quantities reach the book list.
+ * <p>
+ * The quantity of a row is the stock delivered to the store: a raised quantity restocks the
+ * difference, a lowered one or a removed row leaves the books already in stock alone. On the first
+ * sync rows already in the book list, from the seed or the journal, are only remembered.
+ */
+class CatalogSync {
+    private static final int BATCH_SIZE = 1024;
+    private static final int UNASSIGNED_ID = -1;
+
+    private final BookList bookList;
+    private final URL feed;
+    private final int timeoutMillis;
+    private Map<BookKey, Integer> synced;
+    private String etag;
+    private String lastModified;
+
+    CatalogSync(BookList bookList, URL feed) {
+        this(bookList, feed, UPSTREAM_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param timeoutMillis limit on connecting to the feed and on each read from it
+     */
+    CatalogSync(BookList bookList, URL feed, int timeoutMillis) {
+        this.bookList = bookList;
+        this.feed = feed;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the books that were new to the list as inserted, the restocked books as merged, and
+     *         the feed rows that could not be parsed as rejected. All zero when the feed has not
+     *         changed.
+     */
+    synchronized ImportResult sync() throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) feed.openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        try {
+            if (etag != null) {
+                connection.setRequestProperty(HTTP_HEADER_IF_NONE_MATCH, etag);
+            }
+            if (lastModified != null) {
+                connection.setRequestProperty(HTTP_HEADER_IF_MODIFIED_SINCE, lastModified);
+            }
+            final int responseCode = connection.getResponseCode();
+            if (responseCode == HTTP_NOT_MODIFIED) {
+                return ImportResult.of(0, 0, 0);
+            }
+            if (responseCode != HTTP_OK) {
+                throw new IOException("Unexpected response " + responseCode + " from \"" + feed + "\"");
+            }
+            final ImportResult result;
+            try (InputStream stream = connection.getInputStream()) {
+                result = apply(stream);
+            }
+            etag = connection.getHeaderField(HTTP_HEADER_ETAG);
+            lastModified = connection.getHeaderField(HTTP_HEADER_LAST_MODIFIED);
+            return result;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private ImportResult apply(InputStream stream) throws IOException {
+        final Set<BookKey> listed = synced == null ? keysInList() : null;
+        final Map<BookKey, Integer> previous = synced != null ? synced : new HashMap<>();
+        final Map<BookKey, Integer> current = new HashMap<>(previous.size() * 2);
+        final Delta delta = new Delta();
+        final int rejected;
+        try {
+            rejected = BookParser.decode(stream, () -> UNASSIGNED_ID, book -> {
+                final BookKey key = BookKey.of(book);
+                final Integer before = previous.get(key);
+                final int total = current.merge(key, book.getQuantity(), Integer::sum);
+                if (before == null && listed != null && listed.contains(key)) {
+                    return;
+                }
+                // Rows of the same book are summed, only the part above what was delivered before is added
+                final int delivered = Math.max(before != null ? before : 0, total - book.getQuantity());
+                if (total > delivered) {
+                    delta.add(book, total - delivered);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Remember what was added so the next sync does not add it again, a failed first sync
+            // finds it in the book list instead
+            delta.flush();
+            if (synced != null) {
+                previous.forEach(current::putIfAbsent);
+                synced = current;
+            }
+            throw e;
+        }
+        delta.flush();
+        synced = current;
+        return ImportResult.of(delta.inserted, delta.restocked, rejected);
+    }
+
+    private Set<BookKey> keysInList() {
+        final Set<BookKey> keys = new HashSet<>();
+        for (Book book : bookList.list(null)) {
+            keys.add(BookKey.of(book));
+        }
+        return keys;
+    }
+
+    /**
+     * Changed rows waiting to be added to the book list in one batch.
+     */
+    private final class Delta {
+        private final List<Book> batch = new ArrayList<>(BATCH_SIZE);
+        private int inserted;
+        private int restocked;
+
+        private void add(Book row, int quantity) {
+            final int id = row.hasId() ? row.getId() : IdGenerator.generateId();
+            batch.add(new Book(id, row.getTitleText(), row.getAuthorText(), row.getPriceCents(), quantity));
+            if (batch.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (!batch.isEmpty()) {
+                final int added = bookList.addAll(batch);
+                inserted += added;
+                restocked += batch.size() - added;
+                batch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.home.you.bookstore.rest.server;
+
+import com.home.you.bookstore.book.Book;
+import com.home.you.bookstore.booklist.BookList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Buys the orders of concurrent checkouts in batches on a single thread, so a journaled book list
+ * writes and syncs once per batch instead of once per order. Every order is bought all or nothing
+ * like {@link BookList#buyAll(Book...)}, is never split between batches and gets its own status
+ * codes.
+ * <p>
+ * An order that does not fit in the queue, or arrives after {@link #stop()}, is bought on the
+ * calling thread, so a caller never waits for more than a full queue ahead of it. An order still
+ * queued when its caller gives up is taken out and never bought.
+ */
+class CheckoutPipeline {
+    // Wakes the applier on stop, claimed already so it is never bought
+    private static final Order STOP = Order.claimed();
+
+    private final BookList bookList;
+    private final BlockingQueue<Order> queue;
+    private final int maxBatchSize;
+    private final Thread applier;
+    private volatile boolean running = true;
+
+    CheckoutPipeline(BookList bookList, int queueLimit, int maxBatchSize) {
+        if (queueLimit <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Checkout queue limit and batch size must be positive");
+        }
+        this.bookList = bookList;
+        this.queue = new ArrayBlockingQueue<>(queueLimit);
+        this.maxBatchSize = maxBatchSize;
+        this.applier = new Thread(this::applyOrders, "bookstore-checkout");
+        this.applier.setDaemon(true);
+    }
+
+    void start() {
+        applier.start();
+    }
+
+    /**
+     * Waits for the applier to buy the orders still queued. The applier is not interrupted, an
+     * interrupt while it writes the journal would close the journal file.
+     */
+    void stop() {
+        running = false;
+        // A full queue wakes the applier anyway, it stops after the batch it takes
+        queue.offer(STOP);
+        try {
+            applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return status codes of the given books
+     * @throws TimeoutException if the order was still queued after the given time, it is not bought
+     *                          then
+     */
+    int[] checkout(long timeout, TimeUnit unit, Book... books) throws TimeoutException {
+        final Order order = submit(books);
+        try {
+            return order.result.get(timeout, unit);
+        } catch (TimeoutException e) {
+            if (order.claim()) {
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (order.claim()) {
+                throw new IllegalStateException("Interrupted while waiting for checkout", e);
+            }
+        } catch (ExecutionException e) {
+            throw failure(e.getCause());
+        }
+        // The applier took the order, it is bought with the batch being applied
+        try {
+            return order.result.join();
+        } catch (RuntimeException e) {
+            throw failure(e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    private Order submit(Book[] books) {
+        final Order order = new Order(books);
+        if (running && queue.offer(order)) {
+            // The applier may have made its last drain before the order was queued
+            if (running || !queue.remove(order)) {
+                return order;
+            }
+        }
+        order.claim();
+        order.result.complete(bookList.buyAll(books));
+        return order;
+    }
+
+    private static RuntimeException failure(Throwable cause) {
+        return cause instanceof RuntimeException ?
+                (RuntimeException) cause : new IllegalStateException("Checkout failed", cause);
+    }
+
+    private void applyOrders() {
+        final List<Order> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, maxBatchSize - 1);
+            apply(batch);
+            batch.clear();
+        }
+        // Stopped, the orders still queued are bought now
+        queue.drainTo(batch);
+        apply(batch);
+    }
+
+    private void apply(List<Order> drained) {
+        // Orders whose caller gave up are left out
+        final List<Order> batch = new ArrayList<>(drained.size());
+        for (Order order : drained) {
+            if (order.claim()) {
+                batch.add(order);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        final List<Book[]> orders = new ArrayList<>(batch.size());
+        for (Order order : batch) {
+            orders.add(order.books);
+        }
+        final int[][] statusCodes;
+        try {
+            statusCodes = bookList.buyOrders(orders);
+        } catch (RuntimeException e) {
+            for (Order order : batch) {
+                order.result.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < statusCodes.length; i++) {
+            batch.get(i).result.complete(statusCodes[i]);
+        }
+    }
+
+    private static final class Order {
+        private final Book[] books;
+        private final CompletableFuture<int[]> result = new CompletableFuture<>();
+        // Taken by the applier before buying or by the caller giving up, whichever comes first
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private Order(Book[] books) {
+            this.books = books;
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        private static Order claimed() {
+            final Order order = new Order(new Book[0]);
+            order.claim();
+            return order;
+        }
+    }
+}
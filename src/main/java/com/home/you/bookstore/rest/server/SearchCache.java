@@ -0,0 +1,196 @@
+package com.home.you.bookstore.rest.server;
+
+import com.home.you.bookstore.book.Book;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of search results. An entry holds the books found, not their encoding, so it stays
+ * valid while only stock changes and is checked against the catalog version it was computed from.
+ * The cache is bounded by an estimate of the heap its entries take. When it is full a new search is
+ * only admitted if it has been asked for more often than the least recently used entries it would
+ * push out (TinyLFU), so one-off searches do not push out popular ones.
+ */
+class SearchCache {
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int REFERENCE_BYTES = 8;
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final int EXPECTED_ENTRY_BYTES = 1024;
+    private static final int MAX_EXPECTED_ENTRIES = 1 << 16;
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final FrequencySketch sketch;
+    private final LinkedHashMap<String, Entry> entries;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    SearchCache(long maxBytes, long maxEntryBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxBytes, maxEntryBytes);
+        final int expectedEntries = (int) Math.max(1, Math.min(MAX_EXPECTED_ENTRIES, maxBytes / EXPECTED_ENTRY_BYTES));
+        this.sketch = new FrequencySketch(expectedEntries);
+        this.entries = new LinkedHashMap<>(expectedEntries, LOAD_FACTOR, true);
+    }
+
+    /**
+     * @return books found by the search in the given catalog version or null
+     */
+    synchronized Book[] get(String key, long catalogVersion) {
+        sketch.increment(key);
+        final Entry entry = entries.get(key);
+        if (entry != null && entry.catalogVersion == catalogVersion) {
+            hits++;
+            return entry.books;
+        }
+        if (entry != null) {
+            remove(key);
+        }
+        misses++;
+        return null;
+    }
+
+    synchronized void put(String key, long catalogVersion, Book[] books) {
+        final long weight = weigh(key, books);
+        if (weight > maxEntryBytes) {
+            return;
+        }
+        remove(key);
+        // Pick the victims first, nothing is evicted if the search is not admitted
+        final List<String> victims = new ArrayList<>();
+        long freed = 0;
+        final Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes - freed + weight > maxBytes) {
+            final Map.Entry<String, Entry> victim = eldest.next();
+            final boolean victimStale = victim.getValue().catalogVersion != catalogVersion;
+            if (!victimStale && sketch.frequency(key) <= sketch.frequency(victim.getKey())) {
+                rejections++;
+                return;
+            }
+            victims.add(victim.getKey());
+            freed += victim.getValue().weight;
+        }
+        for (String victim : victims) {
+            remove(victim);
+            evictions++;
+        }
+        entries.put(key, new Entry(catalogVersion, books, weight));
+        bytes += weight;
+    }
+
+    synchronized String stats() {
+        return "hits=" + hits + ";misses=" + misses + ";evictions=" + evictions + ";rejections=" + rejections
+                + ";size=" + entries.size() + ";bytes=" + bytes + ";maxBytes=" + maxBytes;
+    }
+
+    private void remove(String key) {
+        final Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.weight;
+        }
+    }
+
+    /**
+     * The books themselves belong to the book list, an entry only adds the array and the key.
+     */
+    private static long weigh(String key, Book[] books) {
+        return ENTRY_OVERHEAD_BYTES + 2L * key.length() + (long) REFERENCE_BYTES * books.length;
+    }
+
+    private static final class Entry {
+        private final long catalogVersion;
+        private final Book[] books;
+        private final long weight;
+
+        private Entry(long catalogVersion, Book[] books, long weight) {
+            this.catalogVersion = catalogVersion;
+            this.books = books;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4 bit counters, sixteen to a long. All counters are halved after a number
+     * of increments proportional to the cache size, so the frequencies follow recent traffic.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int COUNTER_BITS = 4;
+        private static final int COUNTERS_PER_WORD_SHIFT = 4;
+        private static final int COUNTER_INDEX_MASK = (1 << COUNTERS_PER_WORD_SHIFT) - 1;
+        // Clears the bit each counter gets from its neighbour when all are shifted right by one
+        private static final long HALVE_MASK = 0x7777777777777777L;
+        private static final int SAMPLE_FACTOR = 10;
+        private static final int[] SEEDS = {0x97CB3127, 0xB7E15163, 0x5A827999, 0x6ED9EBA1};
+
+        private final long[] counters;
+        private final int width;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int capacity) {
+            int width = 16;
+            while (width < capacity * 2) {
+                width <<= 1;
+            }
+            this.counters = new long[(DEPTH * width) >>> COUNTERS_PER_WORD_SHIFT];
+            this.width = width;
+            this.mask = width - 1;
+            this.sampleSize = capacity * SAMPLE_FACTOR;
+        }
+
+        private void increment(String key) {
+            final int hash = key.hashCode();
+            for (int i = 0; i < DEPTH; i++) {
+                final int counter = counter(hash, i);
+                if (count(counter) < MAX_COUNT) {
+                    counters[counter >>> COUNTERS_PER_WORD_SHIFT] += 1L << shift(counter);
+                }
+            }
+            if (++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private int frequency(String key) {
+            final int hash = key.hashCode();
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, count(counter(hash, i)));
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = (counters[i] >>> 1) & HALVE_MASK;
+            }
+            additions >>>= 1;
+        }
+
+        private int count(int counter) {
+            return (int) (counters[counter >>> COUNTERS_PER_WORD_SHIFT] >>> shift(counter)) & MAX_COUNT;
+        }
+
+        /**
+         * @return position of the counter of the hash in the given row among all counters
+         */
+        private int counter(int hash, int row) {
+            final int h = (hash ^ SEEDS[row]) * SEEDS[row];
+            return row * width + ((h ^ (h >>> 16)) & mask);
+        }
+
+        private static int shift(int counter) {
+            return (counter & COUNTER_INDEX_MASK) * COUNTER_BITS;
+        }
+    }
+}
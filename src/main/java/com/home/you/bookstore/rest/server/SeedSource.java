@@ -0,0 +1,57 @@
+package com.home.you.bookstore.rest.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static com.home.you.bookstore.rest.RestConstants.UPSTREAM_TIMEOUT_MILLIS;
+
+/**
+ * Where the server reads the books it starts with, in the text form of
+ * {@link com.home.you.bookstore.book.BookParser}.
+ */
+public interface SeedSource {
+	InputStream open() throws IOException;
+
+	/**
+	 * Remote feed or a local HTTP stand-in for it.
+	 */
+	static SeedSource url(URL url) {
+		return url(url, UPSTREAM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Same as {@link #url(URL)}, giving up when connecting or a read takes longer than the timeout.
+	 */
+	static SeedSource url(URL url, long timeout, TimeUnit unit) {
+		final int timeoutMillis = (int) Math.min(unit.toMillis(timeout), Integer.MAX_VALUE);
+		return new SeedSourceImpl("url \"" + url + "\"", () -> SeedSourceImpl.openUrl(url, timeoutMillis));
+	}
+
+	static SeedSource file(Path path) {
+		return new SeedSourceImpl("file \"" + path + "\"", () -> Files.newInputStream(path));
+	}
+
+	/**
+	 * Resource on the class path of the server, the name is resolved from the root.
+	 */
+	static SeedSource resource(String name) {
+		return new SeedSourceImpl("resource \"" + name + "\"", () -> {
+			final InputStream stream = SeedSource.class.getResourceAsStream(name);
+			if (stream == null) {
+				throw new IOException("No resource \"" + name + "\"");
+			}
+			return stream;
+		});
+	}
+
+	/**
+	 * Starts with the books already in the book list.
+	 */
+	static SeedSource none() {
+		return SeedSourceImpl.NONE;
+	}
+}
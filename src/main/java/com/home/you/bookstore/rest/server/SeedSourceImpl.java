@@ -0,0 +1,49 @@
+package com.home.you.bookstore.rest.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+import static com.home.you.bookstore.rest.RestConstants.HTTP_OK;
+
+class SeedSourceImpl implements SeedSource {
+	static final SeedSource NONE = new SeedSourceImpl("no seed", () -> new ByteArrayInputStream(new byte[0]));
+
+	private final String description;
+	private final Opener opener;
+
+	SeedSourceImpl(String description, Opener opener) {
+		this.description = description;
+		this.opener = opener;
+	}
+
+	@Override
+	public InputStream open() throws IOException {
+		return opener.open();
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+
+	static InputStream openUrl(URL url, int timeoutMillis) throws IOException {
+		final URLConnection connection = url.openConnection();
+		connection.setConnectTimeout(timeoutMillis);
+		connection.setReadTimeout(timeoutMillis);
+		if (connection instanceof HttpURLConnection) {
+			final int responseCode = ((HttpURLConnection) connection).getResponseCode();
+			if (responseCode != HTTP_OK) {
+				throw new IOException("Unexpected response " + responseCode + " from \"" + url + "\"");
+			}
+		}
+		return connection.getInputStream();
+	}
+
+	interface Opener {
+		InputStream open() throws IOException;
+	}
+}
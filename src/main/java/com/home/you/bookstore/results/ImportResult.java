@@ -0,0 +1,25 @@
+package com.home.you.bookstore.results;
+
+/**
+ * Summary of an import of books into the store.
+ */
+public interface ImportResult {
+    /**
+     * @return number of books that were new to the store
+     */
+    int getInserted();
+
+    /**
+     * @return number of books whose quantity was added to a book already in the store
+     */
+    int getMerged();
+
+    /**
+     * @return number of lines that could not be parsed as a book
+     */
+    int getRejected();
+
+    static ImportResult of(int inserted, int merged, int rejected) {
+        return new ImportResultImpl(inserted, merged, rejected);
+    }
+}
@@ -0,0 +1,33 @@
+package com.home.you.bookstore.results;
+
+class ImportResultImpl implements ImportResult {
+    private final int inserted;
+    private final int merged;
+    private final int rejected;
+
+    ImportResultImpl(int inserted, int merged, int rejected) {
+        this.inserted = inserted;
+        this.merged = merged;
+        this.rejected = rejected;
+    }
+
+    @Override
+    public int getInserted() {
+        return inserted;
+    }
+
+    @Override
+    public int getMerged() {
+        return merged;
+    }
+
+    @Override
+    public int getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult [inserted=" + inserted + ", merged=" + merged + ", rejected=" + rejected + "]";
+    }
+}
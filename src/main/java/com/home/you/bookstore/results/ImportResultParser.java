@@ -0,0 +1,62 @@
+package com.home.you.bookstore.results;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import static com.home.you.bookstore.Constants.*;
+import static com.home.you.bookstore.utils.VarInts.readUnsigned;
+import static com.home.you.bookstore.utils.VarInts.writeUnsigned;
+
+/**
+ * Encodes an import result as one line "inserted;merged;rejected".
+ */
+public class ImportResultParser {
+    private static final int INSERTED_INDEX = 0;
+    private static final int MERGED_INDEX = 1;
+    private static final int REJECTED_INDEX = 2;
+
+    private ImportResultParser() {}
+
+    public static ImportResult decode(InputStream stream) throws IOException {
+        final String line;
+        try (final BufferedReader input = new BufferedReader(new InputStreamReader(stream, UTF8))) {
+            line = input.readLine();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read data from stream.", e);
+        }
+        if (line == null) {
+            throw new IllegalStateException("Import result is missing");
+        }
+        final String[] values = line.split(SEMICOLON);
+        return ImportResult.of(Integer.parseInt(values[INSERTED_INDEX]), Integer.parseInt(values[MERGED_INDEX]),
+                Integer.parseInt(values[REJECTED_INDEX]));
+    }
+
+    /**
+     * Binary form: inserted, merged and rejected as variable length ints.
+     */
+    public static byte[] encodeBinary(ImportResult result) throws IOException {
+        final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        writeUnsigned(blob, result.getInserted());
+        writeUnsigned(blob, result.getMerged());
+        writeUnsigned(blob, result.getRejected());
+        return blob.toByteArray();
+    }
+
+    public static ImportResult decodeBinary(InputStream stream) throws IOException {
+        try (final InputStream input = stream) {
+            return ImportResult.of(readUnsigned(input), readUnsigned(input), readUnsigned(input));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read data from stream.", e);
+        }
+    }
+
+    public static byte[] encode(ImportResult result) {
+        final String message = result.getInserted() + SEMICOLON + result.getMerged() + SEMICOLON
+                + result.getRejected() + NEW_LINE;
+        return message.getBytes(UTF8);
+    }
+}
@@ -1,9 +1,12 @@
 package com.home.you.bookstore.results;
 
 import com.home.you.bookstore.Constants;
+import com.home.you.bookstore.utils.Money;
 import com.home.you.bookstore.utils.ParseUtils;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -12,9 +15,15 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static com.home.you.bookstore.Constants.*;
+import static com.home.you.bookstore.utils.VarInts.*;
 
 public class PurchaseResultParser {
 	
+	private static final int STATUS_BITS = 2;
+	private static final int STATUS_MASK = (1 << STATUS_BITS) - 1;
+	private static final int STATUSES_PER_BYTE = Byte.SIZE / STATUS_BITS;
+	private static final int MAX_PRESIZED_STATUSES = 1024;
+
 	private PurchaseResultParser() {};
     public static PurchaseResult decode(InputStream stream) throws IOException {
         final PurchaseResult.Builder builder = PurchaseResult.builder();
@@ -43,6 +52,54 @@ public class PurchaseResultParser {
         return blob;
     }
 
+    /**
+     * Binary form: total price in cents, the number of statuses and the statuses
+     * packed four to a byte.
+     */
+    public static byte[] encodeBinary(PurchaseResult result) throws IOException {
+        final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        writeSigned(blob, Money.toCents(result.getTotalPrice()));
+        final List<Status> statuses = new ArrayList<>();
+        result.getStatuses().forEach(statuses::add);
+        writeUnsigned(blob, statuses.size());
+        int packed = 0;
+        for (int i = 0; i < statuses.size(); i++) {
+            packed |= statuses.get(i).value() << ((i % STATUSES_PER_BYTE) * STATUS_BITS);
+            if (i % STATUSES_PER_BYTE == STATUSES_PER_BYTE - 1 || i == statuses.size() - 1) {
+                blob.write(packed);
+                packed = 0;
+            }
+        }
+        return blob.toByteArray();
+    }
+
+    public static PurchaseResult decodeBinary(InputStream stream) throws IOException {
+        try (final InputStream input = stream) {
+            final BigDecimal totalPrice = Money.toBigDecimal(readSigned(input));
+            final int count = readUnsigned(input);
+            if (count < 0) {
+                throw new IllegalArgumentException("Invalid status count " + count);
+            }
+            final List<Status> statusList = new ArrayList<>(Math.min(count, MAX_PRESIZED_STATUSES));
+            int packed = 0;
+            for (int i = 0; i < count; i++) {
+                if (i % STATUSES_PER_BYTE == 0) {
+                    packed = input.read();
+                    if (packed < 0) {
+                        throw new EOFException();
+                    }
+                }
+                statusList.add(Status.valueOf((packed >>> ((i % STATUSES_PER_BYTE) * STATUS_BITS)) & STATUS_MASK));
+            }
+            return PurchaseResult.builder()
+                    .withTotalPrice(totalPrice)
+                    .withStatuses(Statuses.of(statusList))
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read data from stream.", e);
+        }
+    }
+
     private static void extractTotalPriceFromFirstLinePopulateBuilder(String line, PurchaseResult.Builder builder) {
         final BigDecimal value = ParseUtils.parseBigDecimal(line);
         builder.withTotalPrice(value);
@@ -5,7 +5,7 @@ import java.util.Collections;
 import java.util.List;
 
 public enum Status {
-    OK(0), NOT_IN_STOCK(1), DOES_NOT_EXIST(2);
+    OK(0), NOT_IN_STOCK(1), DOES_NOT_EXIST(2), CANCELLED(3);
 
     private final int statusCode;
 
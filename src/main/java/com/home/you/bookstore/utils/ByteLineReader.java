@@ -0,0 +1,76 @@
+package com.home.you.bookstore.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads lines as raw bytes into a reused buffer, the line terminator ("\n" or "\r\n") is not
+ * included.
+ */
+public class ByteLineReader {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int INITIAL_LINE_SIZE = 256;
+
+    private final InputStream stream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private byte[] line = new byte[INITIAL_LINE_SIZE];
+    private int length;
+
+    public ByteLineReader(InputStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * @return false when there are no more lines
+     */
+    public boolean next() throws IOException {
+        length = 0;
+        boolean hasData = false;
+        while (true) {
+            if (position == limit) {
+                limit = Math.max(stream.read(buffer), 0);
+                position = 0;
+                if (limit == 0) {
+                    return hasData;
+                }
+            }
+            hasData = true;
+            int end = position;
+            while (end < limit && buffer[end] != '\n') {
+                end++;
+            }
+            append(position, end);
+            if (end < limit) {
+                position = end + 1;
+                if (length > 0 && line[length - 1] == '\r') {
+                    length--;
+                }
+                return true;
+            }
+            position = limit;
+        }
+    }
+
+    /**
+     * The returned array is reused by the next call to {@link #next()}.
+     */
+    public byte[] line() {
+        return line;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    private void append(int from, int to) {
+        final int count = to - from;
+        if (length + count > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length << 1, length + count));
+        }
+        System.arraycopy(buffer, from, line, length, count);
+        length += count;
+    }
+}
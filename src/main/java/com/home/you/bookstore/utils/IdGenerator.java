@@ -13,4 +13,20 @@ public class IdGenerator {
 	public static int generateId() {
 		return INSTANCE.counter.getAndIncrement();
 	}
+
+	/**
+	 * Reserves a block of consecutive ids.
+	 *
+	 * @return first id of the block
+	 */
+	public static int generateIds(int count) {
+		return INSTANCE.counter.getAndAdd(count);
+	}
+
+	/**
+	 * Makes sure ids generated from now on are greater than the given one.
+	 */
+	public static void reserveUpTo(int id) {
+		INSTANCE.counter.accumulateAndGet(id + 1, Math::max);
+	}
 }
@@ -0,0 +1,138 @@
+package com.home.you.bookstore.utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Open addressing hash map keyed by primitive int, so lookups never box the key.
+ * <p>
+ * Writes must be serialized by the caller, reads are safe from any number of threads concurrently
+ * with a writer.
+ */
+public class IntHashMap<V> {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+    private volatile Table table;
+    private int size;
+
+    public IntHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntHashMap(int expectedSize) {
+        this.table = new Table(tableSizeFor(expectedSize));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        final Table t = table;
+        final int mask = t.keys.length - 1;
+        int index = hash(key) & mask;
+        Object value = t.values.get(index);
+        while (value != null) {
+            if (t.keys[index] == key) {
+                return (V) value;
+            }
+            index = (index + 1) & mask;
+            value = t.values.get(index);
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return previous value or null if the key was not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        final Table t = table;
+        final int mask = t.keys.length - 1;
+        int index = hash(key) & mask;
+        Object current = t.values.get(index);
+        while (current != null) {
+            if (t.keys[index] == key) {
+                t.values.lazySet(index, value);
+                return (V) current;
+            }
+            index = (index + 1) & mask;
+            current = t.values.get(index);
+        }
+        t.keys[index] = key;
+        t.values.lazySet(index, value);
+        if (++size > t.keys.length >> 1) {
+            table = t.resize(t.keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return existing value or null if the value was inserted
+     */
+    public V putIfAbsent(int key, V value) {
+        final V existing = get(key);
+        if (existing == null) {
+            put(key, value);
+        }
+        return existing;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        table = new Table(table.keys.length);
+        size = 0;
+    }
+
+    private static int hash(int key) {
+        final int h = key * GOLDEN_RATIO;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity >> 1 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static final class Table {
+        private final int[] keys;
+        // A slot is published by setting its value after its key
+        private final AtomicReferenceArray<Object> values;
+
+        private Table(int capacity) {
+            this.keys = new int[capacity];
+            this.values = new AtomicReferenceArray<>(capacity);
+        }
+
+        private Table resize(int capacity) {
+            final Table resized = new Table(capacity);
+            final int mask = capacity - 1;
+            for (int i = 0; i < keys.length; i++) {
+                final Object value = values.get(i);
+                if (value != null) {
+                    int index = hash(keys[i]) & mask;
+                    while (resized.values.get(index) != null) {
+                        index = (index + 1) & mask;
+                    }
+                    resized.keys[index] = keys[i];
+                    resized.values.lazySet(index, value);
+                }
+            }
+            return resized;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.home.you.bookstore.utils;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints.
+ * <p>
+ * Writes must be serialized by the caller, reads are safe from any number of threads concurrently
+ * with a writer that only appends.
+ */
+public class IntList {
+    private static final int DEFAULT_CAPACITY = 8;
+
+    // The size is written after the element and the array, so reading the size first
+    // guarantees that the array read afterwards holds that many elements
+    private volatile int[] values;
+    private volatile int size;
+
+    public IntList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntList(int capacity) {
+        this.values = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        final int s = size;
+        int[] v = values;
+        if (s == v.length) {
+            v = Arrays.copyOf(v, s << 1);
+            values = v;
+        }
+        v[s] = value;
+        size = s + 1;
+    }
+
+    public int get(int index) {
+        final int s = size;
+        if (index >= s) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + s);
+        }
+        return values[index];
+    }
+
+    public int last() {
+        return get(size - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        final int s = size;
+        return Arrays.copyOf(values, s);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,46 @@
+package com.home.you.bookstore.utils;
+
+import java.math.BigDecimal;
+
+/**
+ * Amounts of money are kept as a whole number of cents, {@link BigDecimal} is only used when an
+ * amount is read or shown.
+ */
+public class Money {
+    public static final int SCALE = 2;
+    private static final int CENTS_PER_UNIT = 100;
+
+    private Money() {}
+
+    /**
+     * @throws IllegalArgumentException if the amount has fractions of a cent or does not fit a long
+     */
+    public static long toCents(BigDecimal amount) {
+        try {
+            return amount.movePointRight(SCALE).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Not a whole number of cents \"" + amount + "\"", e);
+        }
+    }
+
+    public static BigDecimal toBigDecimal(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    /**
+     * Same text as {@code toBigDecimal(cents).toPlainString()}.
+     */
+    public static String toString(long cents) {
+        final StringBuilder builder = new StringBuilder(24);
+        if (cents < 0) {
+            builder.append('-');
+        }
+        final long units = Math.abs(cents / CENTS_PER_UNIT);
+        final long fraction = Math.abs(cents % CENTS_PER_UNIT);
+        builder.append(units).append('.');
+        if (fraction < 10) {
+            builder.append('0');
+        }
+        return builder.append(fraction).toString();
+    }
+}
@@ -4,9 +4,12 @@ import java.math.BigDecimal;
 
 import static com.home.you.bookstore.Constants.COMMA;
 import static com.home.you.bookstore.Constants.EMPTY_STRING;
+import static com.home.you.bookstore.Constants.UTF8;
 
 public class ParseUtils {
 
+    private static final int MAX_LONG_DIGITS = 16;
+
     private ParseUtils() {}
 
     public static int parseIntOrDefault(String value, int defaultValue) {
@@ -20,7 +23,82 @@ public class ParseUtils {
     }
 
     public static BigDecimal parseBigDecimal(String value) {
-        final String trimmedValue = value.replaceAll(COMMA, EMPTY_STRING);
+        final String trimmedValue = value.replace(COMMA, EMPTY_STRING);
         return new BigDecimal(trimmedValue);
     }
+
+    /**
+     * Parses a decimal integer from the bytes without creating a string.
+     */
+    public static int parseInt(byte[] bytes, int from, int to) {
+        int index = from;
+        final boolean negative = index < to && bytes[index] == '-';
+        if (negative || (index < to && bytes[index] == '+')) {
+            index++;
+        }
+        if (index == to) {
+            throw numberFormatException(bytes, from, to);
+        }
+        long value = 0;
+        for (; index < to; index++) {
+            final int digit = bytes[index] - '0';
+            if (digit < 0 || digit > 9) {
+                throw numberFormatException(bytes, from, to);
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw numberFormatException(bytes, from, to);
+            }
+        }
+        final long result = negative ? -value : value;
+        if (result > Integer.MAX_VALUE) {
+            throw numberFormatException(bytes, from, to);
+        }
+        return (int) result;
+    }
+
+    /**
+     * Parses an amount such as "1,748.00" from UTF-8 bytes into cents without creating a string or a
+     * {@link BigDecimal}, other notations fall back to {@link #parseBigDecimal(String)}.
+     *
+     * @throws IllegalArgumentException if the amount is not a whole number of cents
+     */
+    public static long parseCents(byte[] bytes, int from, int to) {
+        int index = from;
+        final boolean negative = index < to && bytes[index] == '-';
+        if (negative || (index < to && bytes[index] == '+')) {
+            index++;
+        }
+        long cents = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; index < to; index++) {
+            final byte b = bytes[index];
+            if (b >= '0' && b <= '9') {
+                if (digits >= MAX_LONG_DIGITS || fractionDigits >= Money.SCALE) {
+                    return Money.toCents(parseBigDecimal(new String(bytes, from, to - from, UTF8)));
+                }
+                cents = cents * 10 + (b - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if (b != ',') {
+                return Money.toCents(parseBigDecimal(new String(bytes, from, to - from, UTF8)));
+            }
+        }
+        if (digits == 0) {
+            throw numberFormatException(bytes, from, to);
+        }
+        for (int i = Math.max(fractionDigits, 0); i < Money.SCALE; i++) {
+            cents *= 10;
+        }
+        return negative ? -cents : cents;
+    }
+
+    private static NumberFormatException numberFormatException(byte[] bytes, int from, int to) {
+        return new NumberFormatException("For input string: \"" + new String(bytes, from, to - from, UTF8) + "\"");
+    }
 }
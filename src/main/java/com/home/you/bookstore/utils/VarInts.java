@@ -0,0 +1,94 @@
+package com.home.you.bookstore.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static com.home.you.bookstore.Constants.UTF8;
+
+/**
+ * Variable length integers, seven bits per byte with the high bit set on every byte but the last.
+ * Signed values are zigzag encoded so small negative numbers stay short.
+ */
+public class VarInts {
+    private static final int MAX_STRING_BYTES = 1 << 20;
+
+    private VarInts() {}
+
+    public static void writeUnsigned(OutputStream stream, int value) throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            stream.write((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        stream.write(remaining);
+    }
+
+    public static void writeSigned(OutputStream stream, long value) throws IOException {
+        long remaining = (value << 1) ^ (value >> 63);
+        while ((remaining & ~0x7FL) != 0) {
+            stream.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        stream.write((int) remaining);
+    }
+
+    public static int readUnsigned(InputStream stream) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = readByte(stream);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable length int");
+    }
+
+    public static long readSigned(InputStream stream) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final int b = readByte(stream);
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable length long");
+    }
+
+    /**
+     * Writes the UTF-8 bytes of the value prefixed by their length.
+     */
+    public static void writeString(OutputStream stream, String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF8);
+        writeUnsigned(stream, bytes.length);
+        stream.write(bytes);
+    }
+
+    public static String readString(InputStream stream) throws IOException {
+        final int length = readUnsigned(stream);
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            final int read = stream.read(bytes, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+        return new String(bytes, UTF8);
+    }
+
+    private static int readByte(InputStream stream) throws IOException {
+        final int b = stream.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+}
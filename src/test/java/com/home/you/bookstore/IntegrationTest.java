@@ -7,20 +7,31 @@ import com.home.you.bookstore.book.Books;
 import com.home.you.bookstore.errors.BookStoreErrorReporter;
 import com.home.you.bookstore.rest.client.BookStoreClient;
 import com.home.you.bookstore.rest.client.BookStoreConnection;
+import com.home.you.bookstore.rest.WireFormat;
 import com.home.you.bookstore.rest.server.BookStoreServer;
+import com.home.you.bookstore.rest.server.SeedSource;
+import com.home.you.bookstore.results.ImportResult;
 import com.home.you.bookstore.results.PurchaseResult;
 import com.home.you.bookstore.results.Status;
 import com.home.you.bookstore.results.Statuses;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.home.you.bookstore.Constants.FIRST;
@@ -47,6 +58,8 @@ public class IntegrationTest implements BookStoreErrorReporter {
     private static final String LOCAL_ADDRESS = "localhost";
     private static final int DEFAULT_PORT = 5542;
     private static final AssertionTask<Book> NO_EXTRA_ASSERTION = book -> {};
+    private static final String SEED_RESOURCE = "/books.txt";
+    private static final long READY_TIMEOUT_SECONDS = 30;
 
     private static final AtomicBoolean ourServerErrorFlag = new AtomicBoolean(false);
 
@@ -62,8 +75,11 @@ public class IntegrationTest implements BookStoreErrorReporter {
                 .withBookList(createBookList(serverBookList))
                 .withBasket(serverBasket)
                 .withBookStoreErrorReporter(this)
+                .withSeedSource(SeedSource.resource(SEED_RESOURCE))
                 .build();
         server.start();
+        assertThat(server.awaitReady(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                .isTrue();
         final BookStoreConnection connection = BookStoreConnection.create(LOCAL_ADDRESS, DEFAULT_PORT);
         client = BookStoreClient.create(this, connection);
     }
@@ -87,6 +103,113 @@ public class IntegrationTest implements BookStoreErrorReporter {
                 .isTrue();
     }
 
+    @Test
+    public void testGetAllBooksRevalidatesCatalog() throws Exception {
+        assertThat(client.getBooks().equals(serverBookList))
+                .isTrue();
+        assertThat(client.getBooks().equals(serverBookList))
+                .isTrue();
+        client.addBooksToStore(Books.of(singletonList(NEW_BOOK)));
+        final Books changedBooks = client.getBooks();
+        assertThat(changedBooks)
+                .hasSize(8);
+        assertThat(changedBooks.equals(serverBookList))
+                .isTrue();
+    }
+
+    @Test
+    public void testNotReadyUntilSeedIsLoaded() throws Exception {
+        server.stop();
+        final CountDownLatch seedRequested = new CountDownLatch(1);
+        final CountDownLatch seedReleased = new CountDownLatch(1);
+        server = BookStoreServer.builder()
+                .withPort(DEFAULT_PORT)
+                .withBookStoreErrorReporter(this)
+                .withSeedSource(() -> {
+                    seedRequested.countDown();
+                    try {
+                        seedReleased.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return IntegrationTest.class.getResourceAsStream(SEED_RESOURCE);
+                })
+                .build();
+        server.start();
+        seedRequested.await();
+        assertThat(responseCode("/bookstore/ready"))
+                .isEqualTo(503);
+        assertThat(responseCode("/bookstore/book"))
+                .isEqualTo(503);
+        seedReleased.countDown();
+        assertThat(server.awaitReady(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                .isTrue();
+        assertThat(responseCode("/bookstore/ready"))
+                .isEqualTo(200);
+        assertThat(client.getBooks())
+                .isNotEmpty();
+    }
+
+    @Test
+    public void testStalledSeedUrlFailsWarmUp() throws Exception {
+        server.stop();
+        final CountDownLatch released = new CountDownLatch(1);
+        final HttpServer upstream = HttpServer.create(new InetSocketAddress(LOCAL_ADDRESS, 0), 0);
+        upstream.createContext("/seed", exchange -> {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        upstream.start();
+        try {
+            server = BookStoreServer.builder()
+                    .withPort(DEFAULT_PORT)
+                    .withSeedSource(SeedSource.url(new URL("http", LOCAL_ADDRESS, upstream.getAddress().getPort(), "/seed"),
+                            200, TimeUnit.MILLISECONDS))
+                    .build();
+            server.start();
+            assertThat(server.awaitReady(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                    .isFalse();
+            assertThat(responseCode("/bookstore/ready"))
+                    .isEqualTo(503);
+        } finally {
+            released.countDown();
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    public void testBinaryWireFormat() throws Exception {
+        final BookStoreConnection connection = BookStoreConnection.builder()
+                .withAddress(LOCAL_ADDRESS)
+                .withPort(DEFAULT_PORT)
+                .withWireFormat(WireFormat.BINARY)
+                .build();
+        final BookStoreClient binaryClient = BookStoreClient.create(this, connection);
+        assertThat(binaryClient.getBooks().equals(serverBookList))
+                .isTrue();
+        assertThat(binaryClient.findBooks(EXISTING_AUTHOR_2))
+                .hasSize(1);
+        final ImportResult importResult = binaryClient.addBooksToStore(Books.of(Arrays.asList(NEW_BOOK, NEW_BOOK)));
+        assertThat(importResult.getInserted())
+                .isEqualTo(1);
+        final Book book = findBookFromStorageOrThrow(EXISTING_TITLE_1, EXISTING_AUTHOR_1, EXISTING_PRICE_1);
+        binaryClient.addBooksToBasket(Arrays.asList(book.getId(), book.getId(), 0));
+        assertThat(serverBasket.getBooks())
+                .hasSize(2);
+        final PurchaseResult result = binaryClient.buyBasket();
+        assertThat(result.getTotalPrice().doubleValue())
+                .isEqualTo(EXISTING_PRICE_1.doubleValue() * 2);
+        assertThat(result.getStatuses())
+                .hasSize(2);
+        result.getStatuses().forEach(status ->
+                assertThat(status)
+                        .isEqualTo(OK));
+    }
+
     @Test
     public void testSearchForBookByTitle() {
         final Books books = client.findBooks(EXISTING_TITLE_1);
@@ -154,7 +277,13 @@ public class IntegrationTest implements BookStoreErrorReporter {
     public void testAddSameTwiceExistingBook() throws Exception {
         final List<Book> bookList = Arrays.asList(NEW_BOOK, NEW_BOOK);
         final Books books = Books.of(bookList);
-        client.addBooksToStore(books);
+        final ImportResult result = client.addBooksToStore(books);
+        assertThat(result.getInserted())
+                .isEqualTo(1);
+        assertThat(result.getMerged())
+                .isEqualTo(1);
+        assertThat(result.getRejected())
+                .isEqualTo(0);
         assertThat(serverBookList)
                 .hasSize(8);
         final Book storedBook = findBookFromStorageOrThrow(NEW_TITILE, NEW_AUTHOR, NEW_PRICE);
@@ -285,15 +414,22 @@ public class IntegrationTest implements BookStoreErrorReporter {
         final Book book = findBookFromStorageOrThrow(EXISTING_TITLE_1, EXISTING_AUTHOR_1, EXISTING_PRICE_1);
         book.addQuantity(- book.getQuantity());
         final Book book2 = findBookFromStorageOrThrow(EXISTING_TITLE_2, EXISTING_AUTHOR_2, EXISTING_PRICE_2);
+        final int quantity2 = book2.getQuantity();
         serverBasket.add(Arrays.asList(NEW_BOOK, book2, book));
         final PurchaseResult result = client.buyBasket();
+        // An order is bought all or nothing
         assertThat(result.getTotalPrice().doubleValue())
-                .isEqualTo(book2.getPrice().doubleValue());
+                .isEqualTo(0.0);
         final Statuses statuses = result.getStatuses();
         assertThat(statuses)
                 .hasSize(3);
         assertThat(statuses)
-                .containsOnly(DOES_NOT_EXIST, OK, NOT_IN_STOCK);
+                .containsOnly(DOES_NOT_EXIST, CANCELLED, NOT_IN_STOCK);
+        assertThat(book2.getQuantity())
+                .isEqualTo(quantity2);
+        // Nothing was bought, the customer keeps the basket
+        assertThat(serverBasket.getBooks())
+                .containsExactly(NEW_BOOK, book2, book);
     }
 
     @Override
@@ -309,6 +445,63 @@ public class IntegrationTest implements BookStoreErrorReporter {
         ourServerErrorFlag.set(true);
     }
 
+    @Test
+    public void testCatalogVariesByAccept() throws Exception {
+        final HttpURLConnection connection =
+                (HttpURLConnection) new URL("http", LOCAL_ADDRESS, DEFAULT_PORT, "/bookstore/book").openConnection();
+        try {
+            connection.setRequestProperty("Accept", WireFormat.BINARY.contentType());
+            assertThat(connection.getResponseCode())
+                    .isEqualTo(200);
+            assertThat(connection.getHeaderField("Vary"))
+                    .isEqualTo("Accept");
+            final String etag = connection.getHeaderField("ETag");
+            final HttpURLConnection revalidation =
+                    (HttpURLConnection) new URL("http", LOCAL_ADDRESS, DEFAULT_PORT, "/bookstore/book").openConnection();
+            revalidation.setRequestProperty("Accept", WireFormat.BINARY.contentType());
+            revalidation.setRequestProperty("If-None-Match", etag);
+            assertThat(revalidation.getResponseCode())
+                    .isEqualTo(304);
+            assertThat(revalidation.getHeaderField("Vary"))
+                    .isEqualTo("Accept");
+            revalidation.disconnect();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void testSwapCatalogReadsOnlyTheRequestBody() throws Exception {
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http", LOCAL_ADDRESS, DEFAULT_PORT,
+                "/bookstore/admin?command=swap&file=src/test/resources/books.txt").openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream body = connection.getOutputStream()) {
+                body.write((NEW_TITILE + ";" + NEW_AUTHOR + ";" + NEW_PRICE + ";" + NEW_QUANTITY + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            assertThat(connection.getResponseCode())
+                    .isEqualTo(200);
+        } finally {
+            connection.disconnect();
+        }
+        final Books books = client.getBooks();
+        assertThat(books)
+                .hasSize(1);
+        assertThat(Book.isSame(books.iterator().next(), NEW_TITILE, NEW_AUTHOR, NEW_PRICE))
+                .isTrue();
+    }
+
+    private static int responseCode(String path) throws IOException {
+        final HttpURLConnection connection =
+                (HttpURLConnection) new URL("http", LOCAL_ADDRESS, DEFAULT_PORT, path).openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
     private Book findBookFromStorageOrThrow(String title, String author, BigDecimal price) {
         Book result = null;
         for (Book book : serverBookList) {
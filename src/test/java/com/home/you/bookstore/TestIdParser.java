@@ -0,0 +1,29 @@
+package com.home.you.bookstore;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TestIdParser {
+
+	@Test
+	public void testBinaryRoundTrip() throws IOException {
+		final byte[] data = IdParser.encodeBinary(Arrays.asList(7, 300, 0, 70000));
+		assertArrayEquals(new int[]{7, 300, 0, 70000}, IdParser.decodeIdsBinary(new ByteArrayInputStream(data)));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testHugeCountWithoutIdsIsRejected() throws IOException {
+		// Count of 2^31 - 1 followed by a single id
+		IdParser.decodeIdsBinary(new ByteArrayInputStream(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07, 1}));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeCountIsRejected() throws IOException {
+		IdParser.decodeIdsBinary(new ByteArrayInputStream(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f}));
+	}
+}
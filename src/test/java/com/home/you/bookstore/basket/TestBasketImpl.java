@@ -0,0 +1,64 @@
+package com.home.you.bookstore.basket;
+
+import com.home.you.bookstore.book.Book;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+
+public class TestBasketImpl {
+    private static final Book FIRST_BOOK = new Book(1, "First", "Author", new BigDecimal("10.00"), 5);
+    private static final Book SECOND_BOOK = new Book(2, "Second", "Author", new BigDecimal("20.00"), 5);
+
+    private Basket basket;
+
+    @Before
+    public void makeBasket() {
+        basket = Basket.create();
+    }
+
+    @Test
+    public void testAddKeepsCopiesInOrderOfFirstAdd() {
+        basket.add(Arrays.asList(FIRST_BOOK, SECOND_BOOK, FIRST_BOOK));
+        assertEquals(Arrays.asList(FIRST_BOOK, FIRST_BOOK, SECOND_BOOK), basket.getBooks());
+        assertEquals(3, basket.size());
+    }
+
+    @Test
+    public void testRemoveByIdRemovesOneCopy() {
+        basket.add(Arrays.asList(FIRST_BOOK, FIRST_BOOK, SECOND_BOOK));
+        basket.remove(FIRST_BOOK.getId(), 4711);
+        assertEquals(Arrays.asList(FIRST_BOOK, SECOND_BOOK), basket.getBooks());
+    }
+
+    @Test
+    public void testRemoveAfterQuantityChanged() {
+        final Book book = new Book(3, "Third", "Author", new BigDecimal("30.00"), 5);
+        basket.add(singletonList(book));
+        book.addQuantity(-1);
+        basket.remove(singletonList(book));
+        assertEquals(Collections.emptyList(), basket.getBooks());
+    }
+
+    @Test
+    public void testAddAfterRemovingAllCopies() {
+        basket.add(Arrays.asList(FIRST_BOOK, SECOND_BOOK));
+        basket.remove(FIRST_BOOK.getId());
+        assertEquals(singletonList(SECOND_BOOK), basket.getBooks());
+        basket.add(singletonList(FIRST_BOOK));
+        assertEquals(Arrays.asList(SECOND_BOOK, FIRST_BOOK), basket.getBooks());
+    }
+
+    @Test
+    public void testClear() {
+        basket.add(Arrays.asList(FIRST_BOOK, SECOND_BOOK));
+        basket.clear();
+        assertEquals(Collections.emptyList(), basket.getBooks());
+        assertEquals(0, basket.size());
+    }
+}
@@ -0,0 +1,73 @@
+package com.home.you.bookstore.basket;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TestShardedBasketStore {
+    private static final String FIRST_TOKEN = "first";
+    private static final String SECOND_TOKEN = "second";
+    private static final int MAX_SHARD_SIZE = 8;
+
+    private final AtomicLong clock = new AtomicLong();
+    private BasketStore store;
+
+    @Before
+    public void makeStore() {
+        store = new ShardedBasketStore(4, MAX_SHARD_SIZE, clock::get);
+    }
+
+    @Test
+    public void testSameTokenGivesSameBasket() {
+        assertSame(store.get(FIRST_TOKEN), store.get(FIRST_TOKEN));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testDifferentTokensGiveDifferentBaskets() {
+        assertNotSame(store.get(FIRST_TOKEN), store.get(SECOND_TOKEN));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void testMissingTokenGivesSharedBasket() {
+        assertSame(store.get(null), store.get(null));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testEvictIdle() {
+        final Basket first = store.get(FIRST_TOKEN);
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(10));
+        store.get(SECOND_TOKEN);
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(10));
+        assertEquals(1, store.evictIdle(15, TimeUnit.MINUTES));
+        assertEquals(1, store.size());
+        assertNotSame(first, store.get(FIRST_TOKEN));
+    }
+
+    @Test
+    public void testSizeIsBoundedByLeastRecentlyUsed() {
+        final Basket first = store.get(FIRST_TOKEN);
+        for (int i = 0; i < 1000; i++) {
+            store.get("token-" + i);
+            store.get(FIRST_TOKEN);
+        }
+        assertTrue(store.size() <= 4 * MAX_SHARD_SIZE);
+        assertSame(first, store.get(FIRST_TOKEN));
+    }
+
+    @Test
+    public void testAccessKeepsBasket() {
+        final Basket first = store.get(FIRST_TOKEN);
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(10));
+        store.get(FIRST_TOKEN);
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(10));
+        assertEquals(0, store.evictIdle(15, TimeUnit.MINUTES));
+        assertSame(first, store.get(FIRST_TOKEN));
+    }
+}
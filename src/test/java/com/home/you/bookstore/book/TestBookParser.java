@@ -0,0 +1,184 @@
+package com.home.you.bookstore.book;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.home.you.bookstore.Constants.UTF8;
+import static org.junit.Assert.*;
+
+public class TestBookParser {
+
+	@Test
+	public void testDecode() throws IOException {
+		final List<Book> books = decode("Mastering åäö;Average Swede;762.00;15\r\n"
+				+ "Generic Title;First Author;1,185.50;5;42\n"
+				+ "\n"
+				+ "Random Sales;Cunning Bastard;999.00;20");
+		assertEquals(3, books.size());
+		assertEquals("Mastering åäö", books.get(0).getTitle());
+		assertEquals("Average Swede", books.get(0).getAuthor());
+		assertEquals(new BigDecimal("762.00"), books.get(0).getPrice());
+		assertEquals(15, books.get(0).getQuantity());
+		assertEquals(new BigDecimal("1185.50"), books.get(1).getPrice());
+		assertEquals(118550, books.get(1).getPriceCents());
+		assertEquals(42, books.get(1).getId());
+		assertEquals("Random Sales", books.get(2).getTitle());
+		assertEquals(20, books.get(2).getQuantity());
+	}
+
+	@Test
+	public void testDecodeSharesAuthors() throws IOException {
+		final List<Book> books = decode("First;Shared Author;1.00;1\nSecond;Shared Author;2.00;1\n");
+		final List<Book> more = decode("Third;Shared Author;3.00;1\n");
+		assertSame(books.get(0).getAuthorText(), books.get(1).getAuthorText());
+		assertSame(books.get(0).getAuthorText(), more.get(0).getAuthorText());
+		assertEquals("shared author", more.get(0).getAuthorText().lowerCase());
+		assertTrue(more.get(0).matchLowerCase("red auth"));
+	}
+
+	@Test
+	public void testTextPoolStopsGrowingAtLimit() {
+		final TextPool pool = new TextPool(1);
+		final Text first = pool.intern("first");
+		assertSame(first, pool.intern("first"));
+		assertNotSame(pool.intern("second"), pool.intern("second"));
+		assertEquals(1, pool.size());
+	}
+
+	@Test
+	public void testTextPoolReleasesUnusedValues() throws InterruptedException {
+		final TextPool pool = new TextPool(1);
+		pool.intern("swapped out");
+		// The pool is full until nothing refers to the first value any more
+		Text shared = null;
+		for (int i = 0; i < 50 && shared == null; i++) {
+			System.gc();
+			Thread.sleep(10);
+			final Text next = pool.intern("next");
+			if (next == pool.intern("next")) {
+				shared = next;
+			}
+		}
+		assertNotNull(shared);
+		assertEquals(1, pool.size());
+	}
+
+	@Test
+	public void testEncodeDecodeRoundTrip() throws IOException {
+		final List<Book> books = decode("Desired;Rich Bloke;564.50;0;7\n");
+		final List<Book> decoded = decode(new String(BookParser.encode(books), UTF8));
+		assertEquals(books.get(0).getTitle(), decoded.get(0).getTitle());
+		assertEquals(books.get(0).getPrice(), decoded.get(0).getPrice());
+		assertEquals(7, decoded.get(0).getId());
+	}
+
+	@Test
+	public void testDecodeNoIdGeneratesId() throws IOException {
+		final List<Book> books = decode("Desired;Rich Bloke;564.50;0;-1\n");
+		assertTrue(books.get(0).hasId());
+		final List<Book> parallel = BookParser.decodeParallel(new ByteArrayInputStream(
+				"Desired;Rich Bloke;564.50;0;-1\nOther;Rich Bloke;1.00;1\n".getBytes(UTF8)));
+		assertTrue(parallel.get(0).hasId());
+		assertNotEquals(parallel.get(0).getId(), parallel.get(1).getId());
+	}
+
+	@Test
+	public void testDecodePriceInCents() throws IOException {
+		final List<Book> books = decode("A;B;12;1\nA;B;-0.5;1\nA;B;1.2e1;1\n");
+		assertEquals(1200, books.get(0).getPriceCents());
+		assertEquals(-50, books.get(1).getPriceCents());
+		assertEquals(1200, books.get(2).getPriceCents());
+		assertEquals("12.00", new String(BookParser.encode(books.subList(0, 1)), UTF8).split(";")[2]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecodeMissingFields() throws IOException {
+		decode("Title;Author\n");
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testDecodeInvalidQuantity() throws IOException {
+		decode("Title;Author;1.00;many\n");
+	}
+
+	@Test
+	public void testDecodeStreamingSkipsInvalidLines() throws IOException {
+		final List<Book> books = new ArrayList<>();
+		final String data = "Generic Title;First Author;185.50;5\n"
+				+ "Title;Author\n"
+				+ "Title;Author;1.00;many\n"
+				+ "Title;Author;1.001;1\n"
+				+ "Random Sales;Cunning Bastard;999.00;20\n";
+		final int rejected = BookParser.decode(new ByteArrayInputStream(data.getBytes(UTF8)), books::add);
+		assertEquals(3, rejected);
+		assertEquals(2, books.size());
+		assertEquals("Random Sales", books.get(1).getTitle());
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws IOException {
+		final List<Book> books = decode("Mastering åäö;Average Swede;762.00;15;3\n"
+				+ "Generic Title;First Author;-1,185.5;5\n"
+				+ "Another Title;Average Swede;0.01;0;70000\n");
+		final byte[] data = BookParser.encodeBinary(books);
+		final List<Book> decoded = BookParser.decodeBinary(new ByteArrayInputStream(data));
+		assertEquals(books.size(), decoded.size());
+		for (int i = 0; i < books.size(); i++) {
+			assertEquals(books.get(i).getId(), decoded.get(i).getId());
+			assertEquals(books.get(i).getTitle(), decoded.get(i).getTitle());
+			assertEquals(books.get(i).getAuthor(), decoded.get(i).getAuthor());
+			assertEquals(books.get(i).getPrice(), decoded.get(i).getPrice());
+			assertEquals(books.get(i).getQuantity(), decoded.get(i).getQuantity());
+		}
+		assertSame(decoded.get(0).getAuthor(), decoded.get(2).getAuthor());
+		assertTrue(data.length < BookParser.encode(books).length);
+	}
+
+	@Test
+	public void testDecodeParallelEqualsSequential() throws IOException {
+		final StringBuilder data = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			data.append("Title ").append(i).append(";Author ").append(i % 97).append(';')
+					.append(i % 1000).append('.').append(i % 100).append(';').append(i % 13);
+			if (i % 5 == 0) {
+				data.append(';').append(i);
+			}
+			data.append(i % 7 == 0 ? "\r\n" : "\n");
+		}
+		final byte[] bytes = data.toString().getBytes(UTF8);
+		final List<Book> sequential = BookParser.decode(new ByteArrayInputStream(bytes));
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			final List<Book> parallel = BookParser.decodeParallel(new ByteArrayInputStream(bytes), pool);
+			assertEquals(sequential.size(), parallel.size());
+			int previousGeneratedId = -1;
+			for (int i = 0; i < sequential.size(); i++) {
+				final Book expected = sequential.get(i);
+				final Book actual = parallel.get(i);
+				assertEquals(expected.getTitle(), actual.getTitle());
+				assertEquals(expected.getAuthor(), actual.getAuthor());
+				assertEquals(expected.getPrice(), actual.getPrice());
+				assertEquals(expected.getQuantity(), actual.getQuantity());
+				if (i % 5 == 0) {
+					assertEquals(i, actual.getId());
+				} else {
+					assertTrue(actual.getId() > previousGeneratedId);
+					assertTrue(actual.getId() > sequential.get(sequential.size() - 1).getId());
+					previousGeneratedId = actual.getId();
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static List<Book> decode(String data) throws IOException {
+		return BookParser.decode(new ByteArrayInputStream(data.getBytes(UTF8)));
+	}
+}
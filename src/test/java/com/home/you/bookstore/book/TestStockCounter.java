@@ -0,0 +1,94 @@
+package com.home.you.bookstore.book;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestStockCounter {
+	private static final int THREADS = 8;
+
+	@Test
+	public void testPromoteKeepsStock() {
+		final StockCounter counter = new StockCounter(10);
+		counter.promote();
+		assertTrue(counter.isStriped());
+		assertEquals(10, counter.get());
+		for (int i = 0; i < 10; i++) {
+			assertTrue(counter.tryDecrement());
+		}
+		assertFalse(counter.tryDecrement());
+		counter.add(2);
+		assertEquals(2, counter.get());
+	}
+
+	@Test
+	public void testOccasionalFailuresDoNotPromote() {
+		final StockCounter counter = new StockCounter(0);
+		for (int i = 0; i < 1000; i++) {
+			counter.updated(1);
+			for (int j = 0; j < 1000; j++) {
+				counter.add(1);
+			}
+		}
+		assertFalse(counter.isStriped());
+		for (int i = 0; i < 64; i++) {
+			counter.updated(1);
+		}
+		assertTrue(counter.isStriped());
+		assertEquals(1000000, counter.get());
+	}
+
+	@Test
+	public void testDemotesWhenQuiet() {
+		final StockCounter counter = new StockCounter(1000000);
+		counter.promote();
+		for (int i = 0; i < 100000 && counter.isStriped(); i++) {
+			counter.tryDecrement();
+		}
+		assertFalse(counter.isStriped());
+		assertTrue(counter.get() > 0);
+	}
+
+	@Test
+	public void testConcurrentBuyersNeverOversell() throws Exception {
+		final int stock = 20000;
+		final StockCounter counter = new StockCounter(stock);
+		final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		final CountDownLatch start = new CountDownLatch(1);
+		try {
+			final List<Future<Integer>> results = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					int taken = 0;
+					for (int i = 0; i < stock; i++) {
+						if (counter.tryDecrement()) {
+							taken++;
+						}
+						if (i % 1000 == 0) {
+							counter.promote();
+						}
+					}
+					return taken;
+				}));
+			}
+			start.countDown();
+			int taken = 0;
+			for (Future<Integer> result : results) {
+				taken += result.get(30, TimeUnit.SECONDS);
+			}
+			assertEquals(stock, taken);
+			assertEquals(0, counter.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
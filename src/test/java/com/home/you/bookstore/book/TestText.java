@@ -0,0 +1,32 @@
+package com.home.you.bookstore.book;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestText {
+
+	@Test
+	public void testLowerCaseValueIsShared() {
+		final String value = "average swede";
+		final Text text = Text.of(value);
+		assertSame(value, text.lowerCase());
+		assertSame(value, text.folded());
+	}
+
+	@Test
+	public void testAsciiFoldedIsLowerCase() {
+		final Text text = Text.of("Average Swede");
+		assertEquals("average swede", text.lowerCase());
+		assertSame(text.lowerCase(), text.folded());
+	}
+
+	@Test
+	public void testFoldedDiffersWhereCaseMappingDoes() {
+		// Final sigma has an upper case that folds back to the ordinary sigma
+		final Text text = Text.of("Σας");
+		assertEquals("σας", text.lowerCase());
+		assertEquals("σασ", text.folded());
+		assertTrue(text.value().equalsIgnoreCase("ΣΑΣ"));
+	}
+}
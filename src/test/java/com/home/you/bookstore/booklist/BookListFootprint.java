@@ -0,0 +1,122 @@
+package com.home.you.bookstore.booklist;
+
+import com.home.you.bookstore.book.Book;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.home.you.bookstore.Constants.*;
+import static com.home.you.bookstore.utils.ArgumentUtils.extractIntegerOrDefault;
+import static com.home.you.bookstore.utils.ArgumentUtils.extractStringOrDefault;
+
+/**
+ * Reports the bytes per book a book list takes, the pause of a full collection with the list live
+ * and the collections during a mix of searches, lookups and sales. Run once per list so the numbers
+ * of one do not affect the other:
+ * <pre>
+ * java -Xmx2g -cp target/classes:target/test-classes com.home.you.bookstore.booklist.BookListFootprint heap 1000000 30
+ * java -Xmx2g -cp target/classes:target/test-classes com.home.you.bookstore.booklist.BookListFootprint offheap 1000000 30
+ * </pre>
+ */
+public class BookListFootprint {
+	private static final String OFF_HEAP = "offheap";
+	private static final int DEFAULT_BOOKS = 1_000_000;
+	private static final int DEFAULT_SECONDS = 30;
+	private static final int AUTHORS = 10_000;
+	private static final int BATCH_SIZE = 10_000;
+	private static final int GC_ROUNDS = 5;
+	private static final int SEARCH_ONE_IN = 20;
+
+	public static void main(String[] args) throws Exception {
+		final boolean offHeap = OFF_HEAP.equalsIgnoreCase(extractStringOrDefault(args, FIRST, "heap"));
+		final int count = extractIntegerOrDefault(args, SECOND, DEFAULT_BOOKS);
+		final int seconds = extractIntegerOrDefault(args, THIRD, DEFAULT_SECONDS);
+
+		final long heapBefore = usedHeap();
+		final long loadStart = System.nanoTime();
+		final BookList bookList = offHeap ? new OffHeapBookList() : new BookListImpl();
+		final List<Book> batch = new ArrayList<>(BATCH_SIZE);
+		for (int i = 0; i < count; i++) {
+			batch.add(book(i));
+			if (batch.size() == BATCH_SIZE) {
+				bookList.addAll(batch);
+				batch.clear();
+			}
+		}
+		bookList.addAll(batch);
+		final long loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStart);
+		final long heapBytes = usedHeap() - heapBefore;
+		final long offHeapBytes = offHeap ? ((OffHeapBookList) bookList).offHeapBytes() : 0;
+
+		System.out.printf("%s list of %d books loaded in %d ms%n", offHeap ? "Off-heap" : "Heap", count, loadMillis);
+		System.out.printf("heap %d bytes/book, off-heap %d bytes/book%n", heapBytes / count, offHeapBytes / count);
+		final long fullStart = System.nanoTime();
+		System.gc();
+		System.out.printf("full collection with the list live %d ms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fullStart));
+
+		final long collectionsBefore = collections();
+		final long collectionMillisBefore = collectionMillis();
+		final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		final AtomicLong operations = new AtomicLong();
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		final List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			final Thread worker = new Thread(() -> {
+				final ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (System.nanoTime() < deadline) {
+					final int i = random.nextInt(count);
+					final int operation = random.nextInt(SEARCH_ONE_IN);
+					if (operation == 0) {
+						bookList.list("title " + i);
+					} else if (operation % 2 == 0) {
+						bookList.findByIds(i + 1);
+					} else {
+						bookList.buy(book(i));
+					}
+					operations.incrementAndGet();
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		System.out.printf("%d operations in %d s on %d threads, %d collections taking %d ms%n", operations.get(), seconds,
+				threads, collections() - collectionsBefore, collectionMillis() - collectionMillisBefore);
+		System.out.printf("%d books still listed%n", bookList.list(null).length);
+	}
+
+	private static Book book(int i) {
+		return new Book(i + 1, "Title " + i, "Author " + (i % AUTHORS), 100 + i % 10_000, 1_000_000);
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		for (int i = 0; i < GC_ROUNDS; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static long collections() {
+		long collections = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			collections += Math.max(0, collector.getCollectionCount());
+		}
+		return collections;
+	}
+
+	private static long collectionMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, collector.getCollectionTime());
+		}
+		return millis;
+	}
+}
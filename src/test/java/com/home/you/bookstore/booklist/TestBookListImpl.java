@@ -4,6 +4,7 @@ import com.home.you.bookstore.book.Book;
 import com.home.you.bookstore.book.BookParser;
 import com.home.you.bookstore.Constants;
 import com.home.you.bookstore.results.Status;
+import com.home.you.bookstore.utils.Money;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -13,6 +14,10 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
@@ -81,12 +86,57 @@ public class TestBookListImpl {
         assertEquals(expectedBooks, actualBooks);
     }
 
+    @Test
+    public void testSubstringSearchingList() {
+        assertSearchMatchesScan("ndom sa");
+        assertSearchMatchesScan("GENERIC");
+        assertSearchMatchesScan("bloke");
+        assertSearchMatchesScan("åäö");
+        assertSearchMatchesScan("ch");
+        assertSearchMatchesScan("Title;");
+    }
+
+    @Test
+    public void testSearchingListFindsAddedBook() {
+        final Book book = new Book(NON_EXIST_TITLE, NON_EXIST_AUTHOR, CORRECT_PRICE, QUANTITY);
+        bookList.add(book, QUANTITY);
+        assertEquals(Arrays.asList(book), Arrays.asList(bookList.list("some")));
+        assertEquals(Arrays.asList(book), Arrays.asList(bookList.list("YOU")));
+    }
+
     @Test
     public void testAddExistBook() {
         final boolean actual = bookList.add(EXIST_BOOK, QUANTITY);
         assertTrue(actual);
     }
 
+    @Test
+    public void testAddExistBookMergesQuantity() {
+        final Book stored = storeBookList.stream().filter(EXIST_BOOK::isSame).findFirst().get();
+        final int originalSize = storeBookList.size();
+        final int originalQuantity = stored.getQuantity();
+        bookList.add(new Book(EXIST_TITLE.toUpperCase(), EXIST_AUTHOR.toLowerCase(), CORRECT_PRICE, QUANTITY), QUANTITY);
+        assertEquals(originalSize, storeBookList.size());
+        assertEquals(originalQuantity + QUANTITY, stored.getQuantity());
+    }
+
+    @Test
+    public void testAddAll() {
+        final Book stored = storeBookList.stream().filter(EXIST_BOOK::isSame).findFirst().get();
+        final int originalSize = storeBookList.size();
+        final int originalQuantity = stored.getQuantity();
+        final long version = bookList.version();
+        final Book newBook = new Book(NON_EXIST_TITLE, NON_EXIST_AUTHOR, CORRECT_PRICE, QUANTITY);
+        final int inserted = bookList.addAll(Arrays.asList(newBook,
+                new Book(EXIST_TITLE, EXIST_AUTHOR, CORRECT_PRICE, QUANTITY)));
+        assertEquals(1, inserted);
+        assertEquals(originalSize + 1, storeBookList.size());
+        assertEquals(originalQuantity + QUANTITY, stored.getQuantity());
+        assertEquals(version + 1, bookList.version());
+        assertSame(newBook, bookList.list(NON_EXIST_TITLE)[0]);
+        assertEquals(originalSize + 1, bookList.list(null).length);
+    }
+
     @Test
     public void testBuy() {
         final int[] expected = {Status.OK.value(), Status.DOES_NOT_EXIST.value(), Status.OK.value(),
@@ -95,6 +145,159 @@ public class TestBookListImpl {
         assertEquals(Arrays.toString(expected), Arrays.toString(actual));
     }
 
+    @Test
+    public void testBuyAll() {
+        final Book stored = storeBookList.stream().filter(EXIST_BOOK::isSame).findFirst().get();
+        final int quantity = stored.getQuantity();
+        final int[] expected = {Status.OK.value(), Status.OK.value()};
+        final int[] actual = bookList.buyAll(EXIST_BOOK, EXIST_BOOK);
+        assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+        assertEquals(quantity - 2, stored.getQuantity());
+    }
+
+    @Test
+    public void testBuyAllRollsBackWhenOneBookFails() {
+        final Book stored = storeBookList.stream().filter(EXIST_BOOK::isSame).findFirst().get();
+        final int quantity = stored.getQuantity();
+        final int[] expected = {Status.CANCELLED.value(), Status.DOES_NOT_EXIST.value(), Status.CANCELLED.value()};
+        final int[] actual = bookList.buyAll(EXIST_BOOK, NON_EXIST_BOOK, EXIST_BOOK);
+        assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+        assertEquals(quantity, stored.getQuantity());
+    }
+
+    @Test
+    public void testConcurrentBuyNeverOversells() throws Exception {
+        final int stock = 1000;
+        final int threads = 8;
+        final int attemptsPerThread = 500;
+        final Book bestseller = new Book(NON_EXIST_TITLE, NON_EXIST_AUTHOR, CORRECT_PRICE, stock);
+        bookList.add(bestseller, stock);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                int bought = 0;
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    if (bookList.buy(bestseller)[0] == Status.OK.value()) {
+                        bought++;
+                    }
+                    assertTrue(bestseller.getQuantity() >= 0);
+                }
+                return bought;
+            }));
+        }
+        start.countDown();
+        int bought = 0;
+        for (Future<Integer> result : results) {
+            bought += result.get();
+        }
+        executor.shutdown();
+        assertEquals(stock, bought);
+        assertEquals(0, bestseller.getQuantity());
+    }
+
+    @Test
+    public void testListWhileAdding() throws Exception {
+        final int added = 5000;
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Future<?> writer = executor.submit(() -> {
+            for (int i = 0; i < added; i++) {
+                bookList.add(new Book(i, NON_EXIST_TITLE + i, NON_EXIST_AUTHOR, CORRECT_PRICE, QUANTITY), QUANTITY);
+            }
+        });
+        int previousSize = 0;
+        while (!writer.isDone()) {
+            final Book[] books = bookList.list(null);
+            assertTrue(books.length >= previousSize);
+            for (Book book : books) {
+                assertNotNull(book);
+            }
+            previousSize = books.length;
+            bookList.list(NON_EXIST_TITLE);
+        }
+        writer.get();
+        executor.shutdown();
+        assertEquals(storeBookList.size(), bookList.list(null).length);
+        assertEquals(added, bookList.list(NON_EXIST_TITLE).length);
+    }
+
+    @Test
+    public void testFindByIds() {
+        final Book first = storeBookList.get(0);
+        final Book last = storeBookList.get(storeBookList.size() - 1);
+        final Book[] actual = bookList.findByIds(last.getId(), 0, first.getId(), last.getId());
+        assertArrayEquals(new Book[]{last, first, last}, actual);
+    }
+
+    @Test
+    public void testFindByIdsAfterAdd() {
+        final Book book = new Book(4711, NON_EXIST_TITLE, NON_EXIST_AUTHOR, CORRECT_PRICE, QUANTITY);
+        assertEquals(0, bookList.findByIds(book.getId()).length);
+        bookList.add(book, QUANTITY);
+        assertArrayEquals(new Book[]{book}, bookList.findByIds(book.getId()));
+    }
+
+    @Test
+    public void testCatalogVersionIgnoresStockChanges() {
+        final long catalogVersion = bookList.catalogVersion();
+        bookList.buy(storeBookList.get(0));
+        bookList.add(storeBookList.get(0), QUANTITY);
+        assertEquals(catalogVersion, bookList.catalogVersion());
+        bookList.add(new Book(NON_EXIST_TITLE, NON_EXIST_AUTHOR, CORRECT_PRICE, QUANTITY), QUANTITY);
+        assertNotEquals(catalogVersion, bookList.catalogVersion());
+    }
+
+    @Test
+    public void testReplacementKeepsStockOfSameBooks() {
+        final Book kept = storeBookList.get(0);
+        final Book dropped = storeBookList.get(1);
+        bookList.buy(kept);
+        final int stock = kept.getQuantity();
+        final Book[] before = bookList.list(Constants.EMPTY_STRING);
+        final Book added = new Book(NON_EXIST_TITLE, NON_EXIST_AUTHOR, CORRECT_PRICE, QUANTITY);
+        final BookList.Replacement replacement = bookList.prepareReplacement(Arrays.asList(
+                new Book(kept.getTitle(), kept.getAuthor(), kept.getPrice(), stock + 5), added));
+        assertEquals(before.length, bookList.list(Constants.EMPTY_STRING).length);
+        assertEquals(1, replacement.publish());
+        assertArrayEquals(new Book[]{kept, added}, bookList.list(Constants.EMPTY_STRING));
+        assertEquals(stock, kept.getQuantity());
+        assertEquals(0, bookList.list(dropped.getTitle()).length);
+        assertEquals(0, bookList.findByIds(dropped.getId()).length);
+        assertArrayEquals(new Book[]{added}, bookList.list(NON_EXIST_TITLE));
+        assertEquals(storeBookList.size(), before.length);
+    }
+
+    @Test
+    public void testReplacementTakesOverBooksAddedMeanwhile() {
+        final Book prepared = new Book(4711, NON_EXIST_TITLE, NON_EXIST_AUTHOR, Money.toCents(CORRECT_PRICE), QUANTITY);
+        final BookList.Replacement replacement = bookList.prepareReplacement(Arrays.asList(storeBookList.get(0), prepared));
+        final Book book = new Book(4712, NON_EXIST_TITLE, NON_EXIST_AUTHOR, Money.toCents(CORRECT_PRICE), QUANTITY);
+        bookList.add(book, QUANTITY);
+        bookList.buy(book);
+        assertEquals(2, replacement.publish());
+        assertArrayEquals(new Book[]{storeBookList.get(0), book}, bookList.list(Constants.EMPTY_STRING));
+        assertArrayEquals(new Book[]{book}, bookList.findByIds(book.getId()));
+        assertEquals(0, bookList.findByIds(prepared.getId()).length);
+        assertEquals(QUANTITY - 1, book.getQuantity());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStaleReplacementIsRejected() {
+        final BookList.Replacement first = bookList.prepareReplacement(storeBookList.subList(0, 1));
+        final BookList.Replacement second = bookList.prepareReplacement(storeBookList.subList(1, 2));
+        first.publish();
+        second.publish();
+    }
+
+    private void assertSearchMatchesScan(String searchString) {
+        final List<Book> expectedBooks = storeBookList.stream()
+                .filter(book -> book.matchTitleOrAuthor(searchString)).collect(Collectors.toList());
+        final List<Book> actualBooks = Arrays.asList(bookList.list(searchString));
+        assertEquals(expectedBooks, actualBooks);
+    }
+
     public static BookList createBookList(List<Book> books) {
         return new BookListImpl(books);
     }
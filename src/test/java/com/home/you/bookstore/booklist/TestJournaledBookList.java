@@ -0,0 +1,238 @@
+package com.home.you.bookstore.booklist;
+
+import com.home.you.bookstore.book.Book;
+import com.home.you.bookstore.results.Status;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class TestJournaledBookList {
+	private static final BigDecimal PRICE = new BigDecimal("12.50");
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRecoverAddsAndSales() throws IOException {
+		final Path directory = folder.getRoot().toPath();
+		try (JournaledBookList bookList = open(directory)) {
+			bookList.add(new Book(7, "Title", "Author", PRICE, 3), 3);
+			bookList.addAll(Arrays.asList(new Book(8, "Other", "Writer", PRICE, 2), new Book(9, "Title", "Author", PRICE, 2)));
+			final Book book = bookList.findByIds(7)[0];
+			assertEquals(Status.OK.value(), bookList.buy(book)[0]);
+			assertEquals(Status.OK.value(), bookList.buyAll(book)[0]);
+		}
+		try (JournaledBookList recovered = open(directory)) {
+			assertEquals(Arrays.asList(3, 2), quantities(recovered));
+			assertEquals(7, recovered.findByIds(7)[0].getId());
+			assertTrue(recovered.add(new Book("New", "Author", PRICE, 1), 1));
+		}
+	}
+
+	@Test
+	public void testTornRecordIsCutOff() throws IOException {
+		final Path directory = folder.getRoot().toPath();
+		try (JournaledBookList bookList = open(directory)) {
+			bookList.add(new Book(7, "Title", "Author", PRICE, 3), 3);
+		}
+		final Path segment = lastSegment(directory);
+		Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+		try (JournaledBookList recovered = open(directory)) {
+			assertEquals(1, recovered.list("").length);
+		}
+		try (JournaledBookList reopened = JournaledBookList.create(BookList.create(), directory)) {
+			assertEquals(1, reopened.recover());
+		}
+	}
+
+	@Test
+	public void testConcurrentSalesAreAllRecovered() throws Exception {
+		final Path directory = folder.getRoot().toPath();
+		final int stock = 400;
+		try (JournaledBookList bookList = open(directory)) {
+			bookList.add(new Book(7, "Bestseller", "Famous", PRICE, stock), stock);
+			final Book bestseller = bookList.findByIds(7)[0];
+			final ExecutorService executor = Executors.newFixedThreadPool(8);
+			try {
+				final List<Future<?>> futures = new ArrayList<>();
+				for (int t = 0; t < 8; t++) {
+					futures.add(executor.submit(() -> {
+						for (int i = 0; i < stock / 8; i++) {
+							bookList.buy(bestseller);
+						}
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+			assertEquals(0, bestseller.getQuantity());
+		}
+		try (JournaledBookList recovered = open(directory)) {
+			assertEquals(Arrays.asList(0), quantities(recovered));
+		}
+	}
+
+	@Test
+	public void testRecoverFromSnapshotAndLaterChanges() throws IOException {
+		final Path directory = folder.getRoot().toPath();
+		try (JournaledBookList bookList = open(directory)) {
+			bookList.add(new Book(7, "Title", "Author", PRICE, 3), 3);
+			bookList.buy(bookList.findByIds(7)[0]);
+			assertEquals(1, bookList.snapshot());
+			bookList.add(new Book(8, "Other", "Writer", PRICE, 2), 2);
+			bookList.buy(bookList.findByIds(7)[0]);
+			assertEquals(2, bookList.snapshot());
+			bookList.buy(bookList.findByIds(8)[0]);
+		}
+		assertEquals(1, files(directory, "snapshot-"));
+		try (JournaledBookList recovered = open(directory)) {
+			assertEquals(Arrays.asList(1, 1), quantities(recovered));
+			assertEquals(8, recovered.findByIds(8)[0].getId());
+		}
+	}
+
+	@Test
+	public void testRecoverReplacement() throws IOException {
+		final Path directory = folder.getRoot().toPath();
+		try (JournaledBookList bookList = open(directory)) {
+			bookList.add(new Book(7, "Title", "Author", PRICE, 3), 3);
+			bookList.add(new Book(8, "Other", "Writer", PRICE, 2), 2);
+			bookList.buy(bookList.findByIds(7)[0]);
+			assertEquals(1, bookList.prepareReplacement(Arrays.asList(
+					new Book(9, "Title", "Author", PRICE, 5), new Book(10, "New", "Writer", PRICE, 4))).publish());
+			bookList.buy(bookList.findByIds(10)[0]);
+		}
+		try (JournaledBookList recovered = open(directory)) {
+			assertEquals(Arrays.asList(2, 3), quantities(recovered));
+			assertEquals(0, recovered.findByIds(8).length);
+			assertEquals(7, recovered.list("Title")[0].getId());
+		}
+	}
+
+	@Test
+	public void testRecoverOffHeapReplacementWithBooksAddedMeanwhile() throws IOException {
+		final Path directory = folder.getRoot().toPath();
+		try (JournaledBookList bookList = openOffHeap(directory)) {
+			bookList.add(new Book(7, "Title", "Author", PRICE, 3), 3);
+			final BookList.Replacement replacement = bookList.prepareReplacement(Arrays.asList(
+					new Book(9, "Title", "Author", PRICE, 5), new Book(10, "New", "Writer", PRICE, 4)));
+			bookList.add(new Book(8, "Other", "Writer", PRICE, 2), 2);
+			bookList.add(new Book(11, "New", "Writer", PRICE, 1), 1);
+			assertEquals(2, replacement.publish());
+			assertEquals(0, bookList.findByIds(8).length);
+			assertEquals(Status.DOES_NOT_EXIST.value(), bookList.buy(new Book(8, "Other", "Writer", PRICE, 2))[0]);
+			bookList.buy(bookList.findByIds(7)[0]);
+			bookList.buy(bookList.findByIds(11)[0]);
+		}
+		try (JournaledBookList recovered = openOffHeap(directory)) {
+			assertEquals(Arrays.asList(2, 0), quantities(recovered));
+			assertEquals(0, recovered.findByIds(8).length);
+		}
+	}
+
+	@Test
+	public void testRecoverChangeLargerThanOneRecord() throws IOException {
+		final Path directory = folder.getRoot().toPath();
+		final int count = 70_000;
+		try (JournaledBookList bookList = openUnindexed(directory)) {
+			assertEquals(count, bookList.addAll(longTitledBooks(count)));
+		}
+		try (JournaledBookList recovered = openUnindexed(directory)) {
+			assertEquals(count, recovered.list(null).length);
+			assertEquals(count, recovered.findByIds(count)[0].getId());
+		}
+	}
+
+	@Test
+	public void testTornChangeIsDroppedWhole() throws IOException {
+		final Path directory = folder.getRoot().toPath();
+		try (JournaledBookList bookList = open(directory)) {
+			bookList.add(new Book(Integer.MAX_VALUE, "Title", "Author", PRICE, 3), 3);
+			bookList.addAll(longTitledBooks(3_000));
+		}
+		final Path segment = lastSegment(directory);
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 10);
+		}
+		try (JournaledBookList recovered = open(directory)) {
+			assertEquals(1, recovered.list(null).length);
+			assertEquals(Integer.MAX_VALUE, recovered.list(null)[0].getId());
+			recovered.addAll(Arrays.asList(new Book(Integer.MAX_VALUE - 1, "Other", "Writer", PRICE, 2)));
+			assertEquals(Status.OK.value(), recovered.buy(recovered.findByIds(Integer.MAX_VALUE - 1))[0]);
+		}
+		try (JournaledBookList recovered = open(directory)) {
+			assertEquals(Arrays.asList(3, 1), quantities(recovered));
+			assertEquals(0, recovered.findByIds(1).length);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testChangeBeforeRecoverIsRejected() {
+		JournaledBookList.create(BookList.create(), folder.getRoot().toPath()).add(new Book("Title", "Author", PRICE, 1), 1);
+	}
+
+	private static JournaledBookList open(Path directory) throws IOException {
+		final JournaledBookList bookList = JournaledBookList.create(BookList.create(), directory);
+		bookList.recover();
+		return bookList;
+	}
+
+	private static JournaledBookList openOffHeap(Path directory) throws IOException {
+		final JournaledBookList bookList = JournaledBookList.create(BookList.createOffHeap(), directory);
+		bookList.recover();
+		return bookList;
+	}
+
+	private static JournaledBookList openUnindexed(Path directory) throws IOException {
+		final JournaledBookList bookList = JournaledBookList.create(new BookListImpl(new ArrayList<>(), TrigramIndex::none), directory);
+		bookList.recover();
+		return bookList;
+	}
+
+	private static List<Book> longTitledBooks(int count) {
+		final char[] padding = new char[1_000];
+		Arrays.fill(padding, 'x');
+		final String title = new String(padding);
+		final List<Book> books = new ArrayList<>(count);
+		for (int i = 1; i <= count; i++) {
+			books.add(new Book(i, title + i, "Author", PRICE, 1));
+		}
+		return books;
+	}
+
+	private static List<Integer> quantities(BookList bookList) {
+		return Arrays.stream(bookList.list("")).map(Book::getQuantity).collect(Collectors.toList());
+	}
+
+	private static long files(Path directory, String prefix) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(path -> path.getFileName().toString().startsWith(prefix)).count();
+		}
+	}
+
+	private static Path lastSegment(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(path -> path.getFileName().toString().startsWith("wal-")).sorted().reduce((first, second) -> second).get();
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package com.home.you.bookstore.booklist;
+
+import com.home.you.bookstore.book.Book;
+import com.home.you.bookstore.book.BookParser;
+import com.home.you.bookstore.results.Status;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestOffHeapBookList {
+	private static final BigDecimal PRICE = new BigDecimal("499.50");
+
+	private List<Book> books;
+	private OffHeapBookList bookList;
+
+	@Before
+	public void makeBookStore() throws IOException {
+		books = BookParser.decode(getClass().getResourceAsStream("/books.txt"));
+		bookList = new OffHeapBookList();
+		bookList.addAll(books);
+	}
+
+	@Test
+	public void testListReturnsCopiesOfAddedBooks() {
+		final Book[] listed = bookList.list(null);
+		assertEquals(books.size(), listed.length);
+		for (int i = 0; i < listed.length; i++) {
+			assertEquals(books.get(i), listed[i]);
+			assertNotSame(books.get(i), listed[i]);
+		}
+	}
+
+	@Test
+	public void testSearchMatchesOnHeapList() {
+		final BookList onHeap = new BookListImpl(new ArrayList<>(books));
+		for (String query : Arrays.asList("ra", "random", "BASTARD", "åäö", "title", "missing")) {
+			assertEquals(query, Arrays.asList(onHeap.list(query)), Arrays.asList(bookList.list(query)));
+		}
+	}
+
+	@Test
+	public void testAddExistingBookMergesQuantity() {
+		final Book first = books.get(0);
+		final Book same = new Book(first.getTitle().toUpperCase(), first.getAuthor(), first.getPrice(), 3);
+		assertEquals(0, bookList.addAll(Arrays.asList(same)));
+		assertEquals(first.getQuantity() + 3, bookList.findByIds(first.getId())[0].getQuantity());
+		assertEquals(books.size(), bookList.list(null).length);
+	}
+
+	@Test
+	public void testBuyNeverOversells() {
+		final Book book = new Book("Only One", "Some Author", PRICE, 1);
+		bookList.add(book, 1);
+		final int[] expected = {Status.OK.value(), Status.NOT_IN_STOCK.value(), Status.DOES_NOT_EXIST.value()};
+		final Book missing = new Book("Only One", "Some Author", new BigDecimal("1.00"), 1);
+		assertEquals(Arrays.toString(expected), Arrays.toString(bookList.buy(book, book, missing)));
+		assertEquals(0, bookList.findByIds(book.getId())[0].getQuantity());
+	}
+
+	@Test
+	public void testBuyAllRollsBack() {
+		final Book inStock = books.stream().filter(Book::inStock).findFirst().get();
+		final Book missing = new Book("Nothing", "Nobody", PRICE, 1);
+		final int[] expected = {Status.CANCELLED.value(), Status.DOES_NOT_EXIST.value()};
+		assertEquals(Arrays.toString(expected), Arrays.toString(bookList.buyAll(inStock, missing)));
+		assertEquals(inStock.getQuantity(), bookList.findByIds(inStock.getId())[0].getQuantity());
+	}
+
+	@Test
+	public void testConcurrentSalesWhileGrowing() throws Exception {
+		final int stock = 400;
+		final Book bestseller = new Book("Bestseller", "Famous", PRICE, stock);
+		bookList.add(bestseller, stock);
+		final AtomicInteger sold = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(5);
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < stock; i++) {
+						if (bookList.buy(bestseller)[0] == Status.OK.value()) {
+							sold.incrementAndGet();
+						}
+						bookList.list("best");
+					}
+				}));
+			}
+			futures.add(executor.submit(() -> {
+				for (int i = 0; i < 70000; i++) {
+					bookList.add(new Book(100000 + i, "Title " + i, "Author " + (i % 100), PRICE, 1), 1);
+				}
+			}));
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(stock, sold.get());
+		assertEquals(0, bookList.findByIds(bestseller.getId())[0].getQuantity());
+		assertEquals(books.size() + 1 + 70000, bookList.list(null).length);
+	}
+
+	@Test
+	public void testGrowsPastOneChunk() {
+		final List<Book> many = new ArrayList<>();
+		for (int i = 0; i < 70000; i++) {
+			many.add(new Book(100000 + i, "Title " + i, "Author " + (i % 100), PRICE, 1));
+		}
+		assertEquals(many.size(), bookList.addAll(many));
+		assertEquals("Title 69999", bookList.findByIds(169999)[0].getTitle());
+		assertEquals(11, bookList.list("title 6999").length);
+		assertTrue(bookList.offHeapBytes() > 0);
+	}
+
+	@Test
+	public void testReplacementKeepsStockOfSameBooks() {
+		final Book kept = books.stream().filter(Book::inStock).findFirst().get();
+		bookList.buy(kept);
+		final int stock = kept.getQuantity() - 1;
+		final Book added = new Book(4711, "New Title", "New Author", PRICE, 3);
+		final BookList.Replacement replacement = bookList.prepareReplacement(Arrays.asList(
+				new Book(kept.getTitle(), kept.getAuthor(), kept.getPrice(), stock + 5), added, added));
+		assertEquals(books.size(), bookList.list(null).length);
+		bookList.buy(kept);
+		assertEquals(1, replacement.publish());
+		final Book[] listed = bookList.list(null);
+		assertEquals(2, listed.length);
+		assertEquals(kept.getId(), listed[0].getId());
+		assertEquals(stock - 1, listed[0].getQuantity());
+		assertEquals(6, listed[1].getQuantity());
+		assertEquals(0, bookList.list(books.get(books.size() - 1).getTitle()).length);
+		assertEquals(1, bookList.list("new title").length);
+		assertEquals(4711, bookList.findByIds(4711)[0].getId());
+	}
+
+	@Test
+	public void testReplacementTakesOverBooksAddedMeanwhile() {
+		final Book first = books.get(0);
+		final BookList.Replacement replacement = bookList.prepareReplacement(Arrays.asList(first,
+				new Book(4711, "New Title", "New Author", PRICE, 3)));
+		final Book book = new Book(4712, "New Title", "New Author", PRICE, 3);
+		bookList.add(book, 3);
+		bookList.buy(book);
+		assertEquals(2, replacement.publish());
+		final Book[] listed = bookList.list(null);
+		assertEquals(Arrays.asList(first.getId(), 4712), Arrays.asList(listed[0].getId(), listed[1].getId()));
+		assertEquals(2, listed[1].getQuantity());
+		assertEquals(0, bookList.findByIds(4711).length);
+		assertEquals(1, bookList.findByIds(4712).length);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStaleReplacementIsRejected() {
+		final BookList.Replacement first = bookList.prepareReplacement(books.subList(0, 1));
+		final BookList.Replacement second = bookList.prepareReplacement(books.subList(1, 2));
+		first.publish();
+		second.publish();
+	}
+
+	@Test
+	public void testConcurrentSalesWhileReplacing() throws Exception {
+		final int stock = 4000;
+		final Book bestseller = new Book("Bestseller", "Famous", PRICE, stock);
+		bookList.add(bestseller, stock);
+		final AtomicInteger sold = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(5);
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < stock; i++) {
+						if (bookList.buyAll(bestseller, bestseller)[0] == Status.OK.value()) {
+							sold.addAndGet(2);
+						}
+					}
+				}));
+			}
+			futures.add(executor.submit(() -> {
+				for (int i = 0; i < 200; i++) {
+					bookList.prepareReplacement(Arrays.asList(bestseller, books.get(i % books.size()))).publish();
+				}
+			}));
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(stock, sold.get());
+		assertEquals(0, bookList.findByIds(bestseller.getId())[0].getQuantity());
+	}
+}
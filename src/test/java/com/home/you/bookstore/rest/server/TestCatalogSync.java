@@ -0,0 +1,113 @@
+package com.home.you.bookstore.rest.server;
+
+import com.home.you.bookstore.book.Book;
+import com.home.you.bookstore.booklist.BookList;
+import com.home.you.bookstore.results.ImportResult;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestCatalogSync {
+	private static final String FIRST_FEED = "Generic Title;First Author;185.50;5\nCheap Book;Second Author;9.99;2\n";
+	private static final String SECOND_FEED = "Generic Title;First Author;185.50;8\nCheap Book;Second Author;9.99;1\n"
+			+ "New Book;Third Author;20.00;4\n";
+
+	private HttpServer upstream;
+	private volatile String feed = FIRST_FEED;
+	private final AtomicInteger downloads = new AtomicInteger();
+	private final CountDownLatch released = new CountDownLatch(1);
+	private BookList bookList;
+	private CatalogSync sync;
+
+	@Before
+	public void setUp() throws Exception {
+		upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		upstream.createContext("/feed", exchange -> {
+			final String body = feed;
+			final String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+			exchange.getResponseHeaders().set("ETag", etag);
+			if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				downloads.incrementAndGet();
+				final byte[] data = body.getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, data.length);
+				exchange.getResponseBody().write(data);
+			}
+			exchange.close();
+		});
+		upstream.createContext("/stalled", exchange -> {
+			try {
+				released.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.close();
+		});
+		upstream.start();
+		bookList = BookList.create();
+		sync = new CatalogSync(bookList, new URL("http", "localhost", upstream.getAddress().getPort(), "/feed"));
+	}
+
+	@After
+	public void tearDown() {
+		released.countDown();
+		upstream.stop(0);
+	}
+
+	@Test
+	public void testUnchangedFeedIsNotDownloaded() throws Exception {
+		assertResult(2, 0, sync.sync());
+		assertResult(0, 0, sync.sync());
+		assertEquals(1, downloads.get());
+		assertEquals(5, quantity("Generic Title"));
+	}
+
+	@Test
+	public void testOnlyChangesAreApplied() throws Exception {
+		sync.sync();
+		bookList.buy(bookList.list("Generic Title")[0]);
+		feed = SECOND_FEED;
+		assertResult(1, 1, sync.sync());
+		assertEquals(7, quantity("Generic Title"));
+		assertEquals(2, quantity("Cheap Book"));
+		assertEquals(4, quantity("New Book"));
+	}
+
+	@Test(expected = SocketTimeoutException.class)
+	public void testStalledFeedTimesOut() throws Exception {
+		new CatalogSync(bookList, new URL("http", "localhost", upstream.getAddress().getPort(), "/stalled"), 200).sync();
+	}
+
+	@Test
+	public void testFirstSyncKeepsSeededBooks() throws Exception {
+		bookList.addAll(Arrays.asList(new Book("Generic Title", "First Author", new BigDecimal("185.50"), 5)));
+		assertResult(1, 0, sync.sync());
+		assertEquals(5, quantity("Generic Title"));
+		feed = SECOND_FEED;
+		sync.sync();
+		assertEquals(8, quantity("Generic Title"));
+	}
+
+	private int quantity(String title) {
+		return bookList.list(title)[0].getQuantity();
+	}
+
+	private static void assertResult(int inserted, int merged, ImportResult result) {
+		assertEquals(inserted, result.getInserted());
+		assertEquals(merged, result.getMerged());
+		assertEquals(0, result.getRejected());
+	}
+}
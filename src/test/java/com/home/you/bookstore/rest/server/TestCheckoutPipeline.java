@@ -0,0 +1,154 @@
+package com.home.you.bookstore.rest.server;
+
+import com.home.you.bookstore.book.Book;
+import com.home.you.bookstore.booklist.BookList;
+import com.home.you.bookstore.booklist.JournaledBookList;
+import com.home.you.bookstore.results.Status;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class TestCheckoutPipeline {
+	private static final Book MISSING = new Book("Missing", "Nobody", new BigDecimal("1.00"), 0);
+	private static final long TIMEOUT_SECONDS = 10;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private Book bestseller;
+	private Book classic;
+	private BookList bookList;
+	private CheckoutPipeline pipeline;
+
+	@Before
+	public void setUp() {
+		bestseller = new Book("Bestseller", "Famous", new BigDecimal("10.00"), 100);
+		classic = new Book("Classic", "Dead", new BigDecimal("5.00"), 1);
+		bookList = BookList.create();
+		bookList.add(bestseller, bestseller.getQuantity());
+		bookList.add(classic, classic.getQuantity());
+		pipeline = new CheckoutPipeline(bookList, 16, 4);
+		pipeline.start();
+	}
+
+	@After
+	public void tearDown() {
+		pipeline.stop();
+	}
+
+	@Test
+	public void testEachOrderIsBoughtAllOrNothing() throws Exception {
+		final int[] first = checkout(bestseller, classic, MISSING);
+		final int[] second = checkout(classic);
+		assertArrayEquals(new int[]{Status.CANCELLED.value(), Status.CANCELLED.value(), Status.DOES_NOT_EXIST.value()},
+				first);
+		assertArrayEquals(new int[]{Status.OK.value()}, second);
+		assertEquals(100, bestseller.getQuantity());
+		assertEquals(0, classic.getQuantity());
+	}
+
+	@Test
+	public void testConcurrentCheckoutsDoNotOversell() throws Exception {
+		final int threads = 8;
+		final int ordersPerThread = 50;
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Integer>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> {
+					int sold = 0;
+					for (int i = 0; i < ordersPerThread; i++) {
+						if (checkout(bestseller)[0] == Status.OK.value()) {
+							sold++;
+						}
+					}
+					return sold;
+				}));
+			}
+			int sold = 0;
+			for (Future<Integer> future : futures) {
+				sold += future.get();
+			}
+			assertEquals(100, sold);
+			assertEquals(0, bestseller.getQuantity());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testOrderAfterStopIsBoughtByCaller() throws Exception {
+		pipeline.stop();
+		assertEquals(Status.OK.value(), checkout(classic)[0]);
+	}
+
+	@Test
+	public void testOrderQueuedPastTimeoutIsNotBought() throws Exception {
+		final CheckoutPipeline notStarted = new CheckoutPipeline(bookList, 16, 4);
+		try {
+			notStarted.checkout(10, TimeUnit.MILLISECONDS, classic);
+			fail("Checkout should time out");
+		} catch (TimeoutException expected) {
+			// The order stays queued until the applier starts
+		}
+		notStarted.start();
+		notStarted.stop();
+		assertEquals(1, classic.getQuantity());
+	}
+
+	@Test
+	public void testStopLeavesTheJournalWritable() throws Exception {
+		final int stock = 100;
+		final Book book = new Book(7, "Journaled", "Author", new BigDecimal("3.00"), stock);
+		int sold = 0;
+		try (JournaledBookList journal = JournaledBookList.create(BookList.create(), folder.getRoot().toPath())) {
+			journal.recover();
+			journal.add(book, stock);
+			final CheckoutPipeline journaled = new CheckoutPipeline(journal, 16, 4);
+			journaled.start();
+			final ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				final List<Future<Integer>> futures = new ArrayList<>();
+				for (int t = 0; t < 4; t++) {
+					futures.add(executor.submit(() -> {
+						int bought = 0;
+						for (int i = 0; i < stock / 4; i++) {
+							if (journaled.checkout(TIMEOUT_SECONDS, TimeUnit.SECONDS, book)[0] == Status.OK.value()) {
+								bought++;
+							}
+						}
+						return bought;
+					}));
+				}
+				Thread.sleep(5);
+				journaled.stop();
+				for (Future<Integer> future : futures) {
+					sold += future.get();
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		try (JournaledBookList recovered = JournaledBookList.create(BookList.create(), folder.getRoot().toPath())) {
+			recovered.recover();
+			assertEquals(stock - sold, recovered.findByIds(7)[0].getQuantity());
+		}
+	}
+
+	private int[] checkout(Book... books) throws TimeoutException {
+		return pipeline.checkout(TIMEOUT_SECONDS, TimeUnit.SECONDS, books);
+	}
+}
@@ -0,0 +1,85 @@
+package com.home.you.bookstore.rest.server;
+
+import com.home.you.bookstore.book.Book;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.*;
+
+public class TestSearchCache {
+	private static final Book[] BOOKS = {new Book("Title", "Author", BigDecimal.ONE, 1)};
+	private static final long VERSION = 1;
+	// Room for one small entry
+	private static final long ONE_ENTRY = 150;
+
+	@Test
+	public void testHitForSameVersion() {
+		final SearchCache cache = new SearchCache(2 * ONE_ENTRY, 2 * ONE_ENTRY);
+		assertNull(cache.get("rich", VERSION));
+		cache.put("rich", VERSION, BOOKS);
+		assertSame(BOOKS, cache.get("rich", VERSION));
+	}
+
+	@Test
+	public void testMissForNewVersion() {
+		final SearchCache cache = new SearchCache(2 * ONE_ENTRY, 2 * ONE_ENTRY);
+		cache.put("rich", VERSION, BOOKS);
+		assertNull(cache.get("rich", VERSION + 1));
+	}
+
+	@Test
+	public void testRareSearchIsNotAdmitted() {
+		final SearchCache cache = new SearchCache(ONE_ENTRY, ONE_ENTRY);
+		for (int i = 0; i < 5; i++) {
+			cache.get("popular", VERSION);
+		}
+		cache.put("popular", VERSION, BOOKS);
+		cache.get("rare", VERSION);
+		cache.put("rare", VERSION, BOOKS);
+		assertSame(BOOKS, cache.get("popular", VERSION));
+		assertNull(cache.get("rare", VERSION));
+	}
+
+	@Test
+	public void testFrequentSearchEvictsLeastRecentlyUsed() {
+		final SearchCache cache = new SearchCache(ONE_ENTRY, ONE_ENTRY);
+		cache.get("old", VERSION);
+		cache.put("old", VERSION, BOOKS);
+		for (int i = 0; i < 5; i++) {
+			cache.get("new", VERSION);
+		}
+		cache.put("new", VERSION, BOOKS);
+		assertSame(BOOKS, cache.get("new", VERSION));
+		assertTrue(cache.stats().contains("evictions=1"));
+	}
+
+	@Test
+	public void testCacheIsBoundedByBytes() {
+		final SearchCache cache = new SearchCache(100 * ONE_ENTRY, 100 * ONE_ENTRY);
+		for (int i = 0; i < 1000; i++) {
+			final String key = "search" + i;
+			cache.get(key, VERSION);
+			cache.get(key, VERSION);
+			cache.put(key, VERSION, BOOKS);
+		}
+		final String stats = cache.stats();
+		final long bytes = Long.parseLong(stats.replaceAll(".*;bytes=(\\d+);.*", "$1"));
+		assertTrue(stats, bytes <= 100 * ONE_ENTRY);
+		assertTrue(stats, bytes > 50 * ONE_ENTRY);
+	}
+
+	@Test
+	public void testLargeResultIsNotCached() {
+		final SearchCache cache = new SearchCache(ONE_ENTRY, ONE_ENTRY);
+		cache.put("rich", VERSION, new Book[1000]);
+		assertNull(cache.get("rich", VERSION));
+	}
+
+	@Test
+	public void testDisabledCacheKeepsNothing() {
+		final SearchCache cache = new SearchCache(0, 0);
+		cache.put("rich", VERSION, BOOKS);
+		assertNull(cache.get("rich", VERSION));
+	}
+}